@@ -2,65 +2,131 @@ package com.grigoriliev.emmylua.ardour;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
 
 public class ArdourLuaScraper {
+	/**
+	 * A separately rendered part of the annotations with its own symbol index.
+	 */
+	record EmittedBlock(StringBuilder buf, SymbolIndex symbolIndex) {
+		EmittedBlock() {
+			this(new StringBuilder(), new SymbolIndex());
+		}
+	}
+
 	public static final Set<String> ARDOUR_GLOBAL_VARIABLES = Set.of("Session", "Editor");
 	public static final Properties CLASS_DOC_PROPERTIES = new Properties();
 	public static final Properties FUNCTION_DOC_PROPERTIES = new Properties();
+	public static final String CLASS_REFERENCE_URL =
+		"https://manual.ardour.org/lua-scripting/class_reference/";
 
 	public static void main(String[] args) {
-		if (args.length != 1) {
+		if (args.length < 1 || args[0].startsWith("--")) {
 			System.out.println("Please, specify output file");
 			return;
 		}
+		String symbolIndexFile = null;
+		ExportOptions options = ExportOptions.DEFAULT;
+		final List<String> sources = new ArrayList<>();
+		LuaModel.ConflictPolicy conflictPolicy = LuaModel.ConflictPolicy.ERROR;
+		TypeGraph.Validation validation = TypeGraph.Validation.WARN;
+		final List<String> rootSymbols = new ArrayList<>();
+		final List<Path> scriptDirs = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].startsWith("--source=")) {
+				sources.add(args[i].substring("--source=".length()));
+			} else if (args[i].startsWith("--conflicts=")) {
+				try {
+					conflictPolicy = LuaModel.ConflictPolicy.valueOf(
+						args[i].substring("--conflicts=".length()).toUpperCase()
+					);
+				} catch (IllegalArgumentException e) {
+					System.out.println("Expected override, union or error: " + args[i]);
+					return;
+				}
+			} else if (args[i].startsWith("--roots=")) {
+				rootSymbols.addAll(List.of(args[i].substring("--roots=".length()).split(",")));
+			} else if (args[i].startsWith("--scan=")) {
+				scriptDirs.add(Paths.get(args[i].substring("--scan=".length())));
+			} else if (args[i].startsWith("--validate=")) {
+				try {
+					validation = TypeGraph.Validation.valueOf(
+						args[i].substring("--validate=".length()).toUpperCase()
+					);
+				} catch (IllegalArgumentException e) {
+					System.out.println("Expected off, warn or fail: " + args[i]);
+					return;
+				}
+			} else if (args[i].startsWith("--symbol-index=")) {
+				symbolIndexFile = args[i].substring("--symbol-index=".length());
+			} else if ("--serial".equals(args[i])) {
+				options = options.withParallel(false);
+			} else if ("--no-merge-overloads".equals(args[i])) {
+				options = options.withMergeOverloads(false);
+			} else if ("--no-docs".equals(args[i])) {
+				options = options.withDocs(false);
+			} else if ("--compact-enums".equals(args[i])) {
+				options = options.withEnumEncoding(ExportOptions.EnumEncoding.COMPACT);
+			} else {
+				System.out.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
 		try {
-			CLASS_DOC_PROPERTIES.load(
-				ArdourLuaScraper.class.getResourceAsStream("/classdoc.properties")
-			);
-			FUNCTION_DOC_PROPERTIES.load(
-				ArdourLuaScraper.class.getResourceAsStream("/functiondoc.properties")
-			);
-			final Document doc = Jsoup.connect(
-				"https://manual.ardour.org/lua-scripting/class_reference/"
-			).get();
-
-			final String pre = "--[[\n\n" +
-				new String(
-					ArdourLuaScraper.class.getResourceAsStream("/LICENSE").readAllBytes(),
-					StandardCharsets.UTF_8
-				)+
-				"\n--]]\n\n" +
-				"-- This is an AUTOMATICALLY generated file by web-scraping\n" +
-				"-- https://manual.ardour.org/lua-scripting/class_reference/\n\n";
-
-			Files.write(
+			loadDocProperties();
+			new GenerationPipeline(
+				sources.isEmpty() ? List.of(CLASS_REFERENCE_URL) : sources,
+				conflictPolicy,
 				Paths.get(args[0]),
-				(pre + exportEmmyLuaAnnotations(doc)).getBytes()
-			);
+				symbolIndexFile == null ? null : Paths.get(symbolIndexFile),
+				options,
+				validation,
+				new TreeShaker.Roots(rootSymbols, scriptDirs)
+			).run();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	static void loadDocProperties() throws IOException {
+		CLASS_DOC_PROPERTIES.load(
+			ArdourLuaScraper.class.getResourceAsStream("/classdoc.properties")
+		);
+		FUNCTION_DOC_PROPERTIES.load(
+			ArdourLuaScraper.class.getResourceAsStream("/functiondoc.properties")
+		);
+	}
+
+	static String getFileHeader(List<String> sources) throws IOException {
+		return "--[[\n\n" +
+			new String(
+				ArdourLuaScraper.class.getResourceAsStream("/LICENSE").readAllBytes(),
+				StandardCharsets.UTF_8
+			)+
+			"\n--]]\n\n" +
+			"-- This is an AUTOMATICALLY generated file by web-scraping\n" +
+			sources.stream().map(source -> "-- " + source + "\n").collect(Collectors.joining()) +
+			"\n";
+	}
+
 	private static Stream<LuaClass> getNamespaceStream(Document doc) {
 		return doc.select("#luaref").stream().flatMap(
 			element -> element.children().stream()
@@ -70,42 +136,91 @@ public class ArdourLuaScraper {
 		).map(LuaClass::new);
 	}
 
-	private static Stream<LuaClass> getClassDefStream(Document doc) {
-		return doc.select("#luaref").stream().flatMap(
-			element -> element.children().stream()
-		).filter(
+	/**
+	 * Moves the class and enum sections out of the document, which is left without them.
+	 * A section is a heading and the elements up to the next heading, which are put into
+	 * a parent of their own. Jsoup nodes aren't thread-safe, and even reading the siblings of
+	 * an element fills a cache in its parent, so a section can then be read by one thread
+	 * while other sections are read by others. The last child of an element is removed
+	 * without moving the others, so the sections are detached in linear time.
+	 *
+	 * @return the headings of the sections in document order.
+	 */
+	static List<Element> detachSections(Document doc) {
+		final List<Element> headings = new ArrayList<>();
+		for (Element luaref : doc.select("#luaref")) {
+			final List<Node> nodes = new ArrayList<>(luaref.childNodes());
+			for (int idx = nodes.size() - 1; idx >= 0; idx--) {
+				nodes.get(idx).remove();
+			}
+			Element section = null;
+			for (Node node : nodes) {
+				if (
+					node instanceof Element heading &&
+						("h2".equals(heading.tagName()) || "h3".equals(heading.tagName()))
+				) {
+					section = new Element("div");
+					headings.add(heading);
+				}
+				if (section != null) {
+					section.appendChild(node);
+				}
+			}
+		}
+		return headings;
+	}
+
+	static LuaModel toLuaModel(Document doc) {
+		final List<Element> headings = detachSections(doc);
+		return new LuaModel(getEnumStream(headings), getClassDefStream(headings));
+	}
+
+	static Stream<LuaClass> getClassDefStream(List<Element> headings) {
+		return getClassDefElementStream(headings).map(LuaClass::new);
+	}
+
+	/**
+	 * @param headings the headings of the sections, see {@link #detachSections(Document)}.
+	 */
+	static Stream<Element> getClassDefElementStream(List<Element> headings) {
+		return headings.stream().filter(
 			element -> "h3".equals(element.tagName()) &&
 			Stream.of(LuaClass.Kind.values()).map(LuaClass.Kind::getCssClass)
 				.anyMatch(element::hasClass)
-		).map(LuaClass::new);
+		);
+	}
+
+	static Stream<LuaEnum> getEnumStream(List<Element> headings) {
+		return getEnumElementStream(headings).map(ArdourLuaScraper::toLuaEnum);
 	}
 
-	private static Stream<LuaEnum> getEnumStream(Document doc) {
+	/**
+	 * @param headings the headings of the sections, see {@link #detachSections(Document)}.
+	 */
+	static Stream<Element> getEnumElementStream(List<Element> headings) {
 		return JSoupUtil.find(
-			doc.select("#luaref").stream().flatMap(
-				element -> element.children().stream()
-			),
+			headings.stream(),
 			el -> el.hasClass("enum") && "h3".equals(el.tagName()),
 			el -> "Enum/Constants".equals(el.text()) && "h2".equals(el.tagName()),
 			el -> false
-		).map(
-			el -> {
-				final Element ulEl = el.nextElementSibling();
-				if (!"ul".equals(ulEl.tagName()) || !ulEl.hasClass("enum")) {
-					throw new IllegalStateException();
+		);
+	}
+
+	static LuaEnum toLuaEnum(Element el) {
+		final Element ulEl = el.nextElementSibling();
+		if (!"ul".equals(ulEl.tagName()) || !ulEl.hasClass("enum")) {
+			throw new IllegalStateException();
+		}
+		return new LuaEnum(
+			getEnumType(el),
+			ulEl.children().stream().map(
+				liEl -> {
+					if (!"li".equals(liEl.tagName()) || !liEl.hasClass("const")) {
+						throw new IllegalStateException();
+					}
+					return adjustEnum(liEl.text());
 				}
-				return new LuaEnum(
-					getEnumType(el),
-					ulEl.children().stream().map(
-						liEl -> {
-							if (!"li".equals(liEl.tagName()) || !liEl.hasClass("const")) {
-								throw new IllegalStateException();
-							}
-							return adjustEnum(liEl.text());
-						}
-					).collect(Collectors.toList())
-				);
-			}
+			).collect(Collectors.toList())
 		);
 	}
 
@@ -125,215 +240,416 @@ public class ArdourLuaScraper {
 	}
 
 	public static String exportEmmyLuaAnnotations(Document doc) {
+		return exportEmmyLuaAnnotations(doc, new SymbolIndex());
+	}
+
+	/**
+	 * @param symbolIndex collects the emitted symbols with their offsets in the returned text.
+	 */
+	public static String exportEmmyLuaAnnotations(Document doc, SymbolIndex symbolIndex) {
+		return exportEmmyLuaAnnotations(doc, ExportOptions.DEFAULT, symbolIndex);
+	}
+
+	public static String exportEmmyLuaAnnotations(
+		Document doc, ExportOptions options, SymbolIndex symbolIndex
+	) {
 		final StringBuilder buf = new StringBuilder();
-		exportEmmyLuaAnnotations(getEnumStream(doc), getClassDefStream(doc), buf);
+		exportEmmyLuaAnnotations(
+			toLuaModel(doc), options, buf, symbolIndex
+		);
 		return buf.toString();
 	}
 
 	public static void exportEmmyLuaAnnotations(
 			Stream<LuaEnum> luaEnumStream, Stream<LuaClass> luaClassStream, StringBuilder buf
 	) {
-		final List<LuaClass> luaClasses = luaClassStream.sorted(
-			Comparator.comparingInt(luaClass -> luaClass.getName().length())
-		).collect(Collectors.toList());
-
-		final Map<String, LuaClass> classMap = new HashMap<>();
-		luaClasses.forEach(
-			luaClass -> {
-				final String ns = getNamespace(luaClass.getName());
-				if (ns != null) {
-					Optional.ofNullable(classMap.get(ns)).ifPresent(
-						parent -> {
-							parent.getNestedClasses().add(luaClass);
-							luaClass.setParent(parent);
-						}
-					);
-				}
-				if (classMap.put(luaClass.getName(), luaClass) != null) {
-					throw new IllegalStateException();
-				}
-			}
+		exportEmmyLuaAnnotations(luaEnumStream, luaClassStream, buf, new SymbolIndex());
+	}
+
+	public static void exportEmmyLuaAnnotations(
+			Stream<LuaEnum> luaEnumStream,
+			Stream<LuaClass> luaClassStream,
+			StringBuilder buf,
+			SymbolIndex symbolIndex
+	) {
+		exportEmmyLuaAnnotations(
+			new LuaModel(luaEnumStream, luaClassStream), ExportOptions.DEFAULT, buf, symbolIndex
 		);
+	}
 
-		final List<LuaEnum> luaEnums = luaEnumStream.map(
-			luaEnum -> {
-				final String ns = getNamespace(luaEnum.type());
-				final LuaClass parent = ns == null ? null : classMap.get(ns);
-				if (parent != null) {
-					parent.getNestedEnums().add(luaEnum);
-					return luaEnum.withParent(parent);
-				}
-				return luaEnum;
+	public static void exportEmmyLuaAnnotations(
+			LuaModel model, ExportOptions options, StringBuilder buf, SymbolIndex symbolIndex
+	) {
+		// Every block is rendered into its own buffer, so the blocks can be rendered
+		// concurrently and are joined in the output order afterwards.
+		final Stream<Consumer<EmittedBlock>> blockWriters =
+			getBlockWriters(model, options).stream();
+		(options.parallel() ? blockWriters.parallel() : blockWriters).map(
+			blockWriter -> {
+				final EmittedBlock block = new EmittedBlock();
+				blockWriter.accept(block);
+				return block;
+			}
+		).collect(Collectors.toList()).forEach(
+			block -> {
+				symbolIndex.addAll(block.symbolIndex(), buf.length());
+				buf.append(block.buf());
 			}
-		).collect(Collectors.toList());
-
-		appendGlobalVars(
-			Stream.concat(
-				luaEnums.stream().flatMap(
-					luaEnum -> Stream.concat(
-						Stream.of(luaEnum.type()),
-						luaEnum.enumVars().stream()
+		);
+	}
+
+	/**
+	 * @return the writers of the output blocks in the output order: the global namespace
+	 * tables, followed by the enum and class blocks. Every block depends only on the model.
+	 */
+	static List<Consumer<EmittedBlock>> getBlockWriters(LuaModel model, ExportOptions options) {
+		// In the compact encoding, the enums nested in a class are emitted with the class.
+		final Map<LuaClass, List<LuaEnum>> nestedEnums = model.getLuaEnums().stream()
+			.filter(luaEnum -> isNestedCompactEnum(luaEnum, model.getClassMap(), options))
+			.collect(Collectors.groupingBy(LuaEnum::parent));
+		return Stream.of(
+			Stream.<Consumer<EmittedBlock>>of(
+				block -> appendGlobalVars(model, options, block.buf(), block.symbolIndex())
+			),
+			model.getLuaEnums().stream()
+				.filter(luaEnum -> !isNestedCompactEnum(luaEnum, model.getClassMap(), options))
+				.map(
+					luaEnum -> (Consumer<EmittedBlock>) block -> appendEmmyLuaEnum(
+						luaEnum, model.getClassMap(), options, block.buf(), block.symbolIndex()
 					)
-				).map(ArdourLuaScraper::getNamespace),
-				luaClasses.stream().filter(luaClass -> luaClass.getParent() == null).map(
-					luaClass -> luaClass.isNamespace() ?
-						luaClass.getName() : getNamespace(luaClass.getName())
+				),
+			model.getLuaClasses().stream().map(
+				luaClass -> (Consumer<EmittedBlock>) block -> appendEmmyLuaClass(
+					luaClass,
+					nestedEnums.getOrDefault(luaClass, List.of()),
+					options,
+					block.buf(),
+					block.symbolIndex()
 				)
-			).filter(Objects::nonNull),
-			buf
+			)
+		).flatMap(Function.identity()).collect(Collectors.toList());
+	}
+
+	/**
+	 * An enum is emitted in the compact encoding only if all its values are named after
+	 * the enum, so that they can be listed as the fields of its table.
+	 */
+	private static boolean isCompactEnum(LuaEnum luaEnum, ExportOptions options) {
+		return options.enumEncoding() == ExportOptions.EnumEncoding.COMPACT &&
+			luaEnum.hasQualifiedValues();
+	}
+
+	private static boolean isNestedCompactEnum(
+		LuaEnum luaEnum, Map<String, LuaClass> classMap, ExportOptions options
+	) {
+		return luaEnum.parent() != null &&
+			!classMap.containsKey(luaEnum.type()) &&
+			isCompactEnum(luaEnum, options);
+	}
+
+	private static void appendGlobalVars(
+		LuaModel model, ExportOptions options, StringBuilder buf, SymbolIndex symbolIndex
+	) {
+		model.getNamespaceTree().append(
+			options.enumEncoding() == ExportOptions.EnumEncoding.COMPACT, buf, symbolIndex
 		);
+	}
 
-		luaEnums.forEach(
-			luaEnum -> {
-				boolean isEnum = !classMap.containsKey(luaEnum.type());
-				if (isEnum) {
-					buf.append("---").append("This is an enum which can take one of the following values:\n");
-					luaEnum.enumVars().forEach(
-						var -> buf.append("--- * **").append(var).append("**\n")
-					);
-					luaEnum.enumVars().forEach(
-						var -> buf.append("---@see ").append(var).append('\n')
-					);
-					buf.append("---@class ").append(luaEnum.type()).append('\n');
-					buf.append(luaEnum.type()).append(" = {}\n\n");
-				}
+	private static void appendEmmyLuaEnum(
+		LuaEnum luaEnum,
+		Map<String, LuaClass> classMap,
+		ExportOptions options,
+		StringBuilder buf,
+		SymbolIndex symbolIndex
+	) {
+		final boolean isEnum = !classMap.containsKey(luaEnum.type());
+		if (isCompactEnum(luaEnum, options)) {
+			appendCompactEnum(luaEnum, isEnum, buf, symbolIndex);
+			return;
+		}
+		if (isEnum) {
+			symbolIndex.add(
+				luaEnum.type(),
+				SymbolIndex.Kind.ENUM,
+				String.join(" | ", luaEnum.enumVars()),
+				buf.length()
+			);
+			buf.append("---").append("This is an enum which can take one of the following values:\n");
+			luaEnum.enumVars().forEach(
+				var -> buf.append("--- * **").append(var).append("**\n")
+			);
+			luaEnum.enumVars().forEach(
+				var -> buf.append("---@see ").append(var).append('\n')
+			);
+			buf.append("---@class ").append(luaEnum.type()).append('\n');
+			buf.append(luaEnum.type()).append(" = {}\n\n");
+		}
 
-				if (isEnum) {
-					luaEnum.enumVars().forEach(
-						var -> buf.append("---This is an enum value of the following enum:").append('\n')
-							.append("--- **").append(luaEnum.type()).append("**\n")
-							.append("---@see ").append(luaEnum.type()).append('\n')
-							.append("---@type ").append(luaEnum.type()).append('\n')
-							.append(var).append(" = {}\n\n")
+		if (isEnum) {
+			luaEnum.enumVars().forEach(
+				var -> {
+					symbolIndex.add(
+						var, SymbolIndex.Kind.ENUM_VALUE, luaEnum.type(), buf.length()
 					);
-				} else {
-					luaEnum.enumVars().forEach(
-						var -> buf.append("---This is a constant/enum.").append('\n')
-							.append("---@see ").append(luaEnum.type()).append('\n')
-							.append(var).append(" = {}\n\n")
+					buf.append("---This is an enum value of the following enum:").append('\n')
+					.append("--- **").append(luaEnum.type()).append("**\n")
+					.append("---@see ").append(luaEnum.type()).append('\n')
+					.append("---@type ").append(luaEnum.type()).append('\n')
+					.append(var).append(" = {}\n\n");
+				}
+			);
+		} else {
+			luaEnum.enumVars().forEach(
+				var -> {
+					symbolIndex.add(
+						var, SymbolIndex.Kind.CONSTANT, luaEnum.type(), buf.length()
 					);
+					buf.append("---This is a constant/enum.").append('\n')
+						.append("---@see ").append(luaEnum.type()).append('\n')
+						.append(var).append(" = {}\n\n");
 				}
-			}
-		);
-
-		luaClasses.forEach(
-			luaClass -> {
-				appendEmmyLuaDoc(luaClass, buf);
-				final String baseClass = luaClass.getBaseClassName();
-				buf.append("---@class ").append(luaClass.getName()).append(
-					baseClass.isEmpty() ? "" : " : " + baseClass
-				).append("\n");
-				luaClass.getLuaFields().forEach(
-					field -> {
-						buf.append("---@field ").append(field.name()).append(' ');
-						final String luaType = toLuaType(field.type());
-						buf.append(luaType);
-						String comment = getTypeComment(field.type(), luaType);
-						if (!field.doc().isBlank()) {
-							comment += field.doc().lines().collect(Collectors.joining(" "));
-						}
-						buf.append(comment.isBlank() ? "\n" : " @" + comment + "\n");
-					}
-				);
-				buf.append(
-					ARDOUR_GLOBAL_VARIABLES.contains(luaClass.getName()) ||
-						luaClass.getName().contains(".") ? "" : "local "
-				).append(luaClass.getName()).append(" = {}\n");
-				luaClass.getLuaFunctions().forEach(
-					function -> appendEmmyLuaFunction(luaClass, function, buf)
-				);
-				buf.append("\n\n");
-			}
-		);
+			);
+		}
 	}
 
-	private static void appendGlobalVars(Stream<String> globalVarStream, StringBuilder buf) {
-		final Map<String, Object> globalVarTree = new TreeMap<>();
-		globalVarStream.map(name -> name.split("\\."))
-			.forEach(
-				path -> {
-					Map<String, Object> map = globalVarTree;
-					for (String el : path) {
-						map = (Map<String, Object>) map.computeIfAbsent(el, key -> new TreeMap());
-					}
+	/**
+	 * Appends an enum as a single {@code ---@enum} table, or the constants of a class as
+	 * fields of the class, instead of a global per value.
+	 */
+	private static void appendCompactEnum(
+		LuaEnum luaEnum, boolean isEnum, StringBuilder buf, SymbolIndex symbolIndex
+	) {
+		final int prefixLength = luaEnum.type().length() + 1;
+		if (isEnum) {
+			symbolIndex.add(
+				luaEnum.type(),
+				SymbolIndex.Kind.ENUM,
+				String.join(" | ", luaEnum.enumVars()),
+				buf.length()
+			);
+			buf.append("---@enum ").append(luaEnum.type()).append('\n');
+			buf.append(luaEnum.type()).append(" = {\n");
+			luaEnum.enumVars().forEach(
+				var -> {
+					symbolIndex.add(
+						var, SymbolIndex.Kind.ENUM_VALUE, luaEnum.type(), buf.length()
+					);
+					buf.append('\t').append(var, prefixLength, var.length()).append(" = {},\n");
 				}
 			);
-
-		appendGlobalVars(List.of(), globalVarTree, buf);
+			buf.append("}\n\n");
+		} else {
+			buf.append("---@class ").append(luaEnum.type()).append('\n');
+			luaEnum.enumVars().forEach(
+				var -> {
+					symbolIndex.add(var, SymbolIndex.Kind.CONSTANT, luaEnum.type(), buf.length());
+					buf.append("---@field ").append(var, prefixLength, var.length())
+						.append(" table @This is a constant/enum.\n");
+				}
+			);
+			buf.append('\n');
+		}
 	}
 
-	private static void appendGlobalVars(
-		List<String> pref, Map<String, Object> globalVarsMap, StringBuilder buf
+	/**
+	 * @param nestedEnums the enums nested in the class, which are emitted in its block.
+	 */
+	private static void appendEmmyLuaClass(
+		LuaClass luaClass,
+		List<LuaEnum> nestedEnums,
+		ExportOptions options,
+		StringBuilder buf,
+		SymbolIndex symbolIndex
 	) {
-		final String indent = IntStream.range(0, pref.size())
-			.mapToObj(idx -> "\t").collect(Collectors.joining());
-		globalVarsMap.forEach(
-			(ns, map) -> {
-				buf.append(indent).append("---@class ");
-				final String nsPref = pref.stream().collect(Collectors.joining("."));
-				if (!nsPref.isEmpty()) {
-					buf.append(nsPref).append('.');
+		if (options.docs()) {
+			appendEmmyLuaDoc(luaClass, buf);
+		}
+		final String baseClass = luaClass.getBaseClassName();
+		symbolIndex.add(
+			luaClass.getName(),
+			luaClass.isNamespace() ? SymbolIndex.Kind.NAMESPACE : SymbolIndex.Kind.CLASS,
+			luaClass.getName(),
+			baseClass,
+			buf.length()
+		);
+		buf.append("---@class ").append(luaClass.getName()).append(
+			baseClass.isEmpty() ? "" : " : " + baseClass
+		).append("\n");
+		luaClass.getLuaFields().forEach(
+			field -> {
+				final String luaType = toLuaType(field.type());
+				symbolIndex.add(
+					luaClass.getName() + "." + field.name(),
+					SymbolIndex.Kind.FIELD,
+					luaType,
+					buf.length()
+				);
+				buf.append("---@field ").append(field.name()).append(' ');
+				buf.append(luaType);
+				String comment = getTypeComment(field.type(), luaType);
+				if (options.docs() && !field.doc().get().isBlank()) {
+					comment += field.doc().get().lines().collect(Collectors.joining(" "));
 				}
-				buf.append(ns).append('\n');
-				buf.append(indent).append(ns).append(" = {\n");
-				final List<String> newPref = new ArrayList<>(pref);
-				newPref.add(ns);
-				appendGlobalVars(newPref, (Map<String, Object>) map, buf);
-				buf.append(indent).append(pref.isEmpty() ? "}\n" : "},\n");
+				buf.append(comment.isBlank() ? "\n" : " @" + comment + "\n");
 			}
 		);
-		if (!globalVarsMap.isEmpty() && !pref.isEmpty()) {
-			buf.delete(buf.length() - 2, buf.length() - 1);
+		buf.append(
+			ARDOUR_GLOBAL_VARIABLES.contains(luaClass.getName()) ||
+				luaClass.getName().contains(".") ? "" : "local "
+		).append(luaClass.getName()).append(" = {}\n");
+		nestedEnums.forEach(luaEnum -> appendCompactEnum(luaEnum, true, buf, symbolIndex));
+		if (options.mergeOverloads()) {
+			luaClass.getLuaFunctions().stream().collect(
+				Collectors.groupingBy(
+					function -> getFunctionName(luaClass, function),
+					LinkedHashMap::new,
+					Collectors.toList()
+				)
+			).values().forEach(
+				overloads -> appendEmmyLuaFunction(luaClass, overloads, options, buf, symbolIndex)
+			);
+		} else {
+			luaClass.getLuaFunctions().forEach(
+				function -> appendEmmyLuaFunction(
+					luaClass, List.of(function), options, buf, symbolIndex
+				)
+			);
 		}
+		buf.append("\n\n");
 	}
 
+	/**
+	 * Appends a single definition for the overloads of a function. The first overload is
+	 * the primary definition; the others are appended as {@code ---@overload} annotations.
+	 */
 	private static void appendEmmyLuaFunction(
-		LuaClass luaClass, LuaFunction function, StringBuilder buf
+		LuaClass luaClass,
+		List<LuaFunction> overloads,
+		ExportOptions options,
+		StringBuilder buf,
+		SymbolIndex symbolIndex
 	) {
-		final String functionName = getFunctionName(luaClass, function);
-		appendEmmyLuaDoc(functionName, function, buf);
-		final List<String> params = getParamNames(
-			function.arguments().stream().map(LuaField::type).collect(Collectors.toList())
+		// Overloads with the same parameter and return types, which differ only in docs or
+		// parameter names, are one signature. The first overload of each is emitted.
+		final List<List<LuaFunction>> signatures = new ArrayList<>(
+			overloads.stream().collect(
+				Collectors.groupingBy(
+					overload -> getSignatureTypes(luaClass, overload),
+					LinkedHashMap::new,
+					Collectors.toList()
+				)
+			).values()
 		);
+		final LuaFunction function = overloads.get(0);
+		final String functionName = getFunctionName(luaClass, function);
+		if (options.docs()) {
+			appendEmmyLuaDoc(luaClass, functionName, signatures, buf);
+		}
+		final List<String> params = getParamNames(function);
 		IntStream.range(0, params.size()).forEach(
 			idx -> {
-				final String type = function.arguments().get(idx).type();
-				final String luaType = toLuaType(type);
-				params.get(idx);
-				if (function.arguments().get(idx).name() != null) {
-					params.set(idx, function.arguments().get(idx).name());
-				}
-				String comment = getTypeComment(type, luaType);
-				if (function.arguments().get(idx).doc() != null) {
-					comment += function.arguments().get(idx).doc().lines()
-						.collect(Collectors.joining(" "));
-				}
+				final String comment = getParamComment(function.arguments().get(idx), options);
 				buf.append("---@param ")
-				.append(params.get(idx)).append(' ').append(luaType)
+				.append(params.get(idx)).append(' ')
+				.append(toLuaType(function.arguments().get(idx).type()))
 				.append(comment.isBlank() ? "\n" : " @" + comment + "\n");
 			}
 		);
-		if (
-			!"void".equals(function.returnType()) &&
-			!"...".equals(function.returnType())
-		) {
-			final String luaType = function.isConstructor() ?
-				luaClass.getName() : toLuaType(function.returnType());
-			String comment = getTypeComment(function.returnType(), luaType);
-			final String rd = function.returnDoc().lines().collect(Collectors.joining(" "));
-			if (!rd.isEmpty()) {
-				comment = (comment.isEmpty() ? "" : comment + " ") + rd;
-			}
+		final String luaType = getLuaReturnType(luaClass, function);
+		if (luaType != null) {
+			final String comment = getReturnComment(function, luaType, options);
 			buf.append("---@return ").append(luaType)
 				.append(comment.isBlank() ? "\n" : " @" + comment + "\n");
 		}
 
+		signatures.stream().skip(1).map(signature -> signature.get(0)).forEach(
+			overload -> {
+				final String overloadSignature =
+					getFunctionSignature(luaClass, overload, getParamNames(overload));
+				addFunctionSymbol(functionName, overload, overloadSignature, buf, symbolIndex);
+				buf.append("---@overload ").append(overloadSignature).append('\n');
+			}
+		);
+		addFunctionSymbol(
+			functionName, function, getFunctionSignature(luaClass, function, params), buf, symbolIndex
+		);
 		buf.append("function ").append(functionName).append("(")
 			.append(params.stream().collect(Collectors.joining(", ")))
 			.append(") end\n\n");
 	}
 
-	private static String getNamespace(String var) {
+	private static void addFunctionSymbol(
+		String functionName,
+		LuaFunction function,
+		String signature,
+		StringBuilder buf,
+		SymbolIndex symbolIndex
+	) {
+		symbolIndex.add(
+			functionName,
+			function.isConstructor() ?
+				SymbolIndex.Kind.CONSTRUCTOR : SymbolIndex.Kind.FUNCTION,
+			signature,
+			buf.length()
+		);
+	}
+
+	private static String getParamComment(LuaField param, ExportOptions options) {
+		String comment = getTypeComment(param.type(), toLuaType(param.type()));
+		final String doc = options.docs() ? param.doc().get() : null;
+		if (doc != null) {
+			comment += doc.lines().collect(Collectors.joining(" "));
+		}
+		return comment;
+	}
+
+	private static String getReturnComment(
+		LuaFunction function, String luaType, ExportOptions options
+	) {
+		String comment = getTypeComment(function.returnType(), luaType);
+		final String rd = options.docs() ?
+			function.returnDoc().get().lines().collect(Collectors.joining(" ")) : "";
+		if (!rd.isEmpty()) {
+			comment = (comment.isEmpty() ? "" : comment + " ") + rd;
+		}
+		return comment;
+	}
+
+	/**
+	 * @return the parameter and return types of the function, which identify an overload.
+	 */
+	private static List<String> getSignatureTypes(LuaClass luaClass, LuaFunction function) {
+		final List<String> types = function.arguments().stream()
+			.map(param -> toLuaType(param.type())).collect(Collectors.toList());
+		types.add(String.valueOf(getLuaReturnType(luaClass, function)));
+		return types;
+	}
+
+	/**
+	 * @return {@code null} if the function doesn't return a value.
+	 */
+	static String getLuaReturnType(LuaClass luaClass, LuaFunction function) {
+		if ("void".equals(function.returnType()) || "...".equals(function.returnType())) {
+			return null;
+		}
+		return function.isConstructor() ? luaClass.getName() : toLuaType(function.returnType());
+	}
+
+	/**
+	 * @return the function type in EmmyLua notation, e.g. {@code fun(name: string): boolean}.
+	 */
+	private static String getFunctionSignature(
+		LuaClass luaClass, LuaFunction function, List<String> params
+	) {
+		final String luaReturnType = getLuaReturnType(luaClass, function);
+		return IntStream.range(0, params.size())
+			.mapToObj(
+				idx -> params.get(idx) + ": " + toLuaType(function.arguments().get(idx).type())
+			).collect(Collectors.joining(", ", "fun(", ")")) +
+			(luaReturnType == null ? "" : ": " + luaReturnType);
+	}
+
+	static String getNamespace(String var) {
 		int idx = var.lastIndexOf('.');
 		return idx == -1 ? null : var.substring(0, idx);
 	}
@@ -355,10 +671,60 @@ public class ArdourLuaScraper {
 		return prefix + functionName;
 	}
 
+	/**
+	 * Appends the distinct docs of the primary signature, followed by the own docs of each
+	 * other signature, which have no {@code @param} and {@code @return} annotations. These
+	 * are labeled by the signature; a signature without docs of its own is left out.
+	 *
+	 * @param signatures the overloads grouped by signature, the primary signature first.
+	 */
 	private static void appendEmmyLuaDoc(
-		String fullFunctionName, LuaFunction luaFunction, StringBuilder buf
+		LuaClass luaClass,
+		String fullFunctionName,
+		List<List<LuaFunction>> signatures,
+		StringBuilder buf
 	) {
-		appendEmmyLuaDoc(luaFunction.doc(), buf);
+		final int start = buf.length();
+		appendEmmyLuaDoc(signatures.get(0), buf);
+		final Set<String> primaryDocs = signatures.get(0).stream()
+			.map(function -> function.doc().get()).collect(Collectors.toSet());
+		signatures.stream().skip(1).forEach(
+			signature -> {
+				final LuaFunction overload = signature.get(0);
+				final StringBuilder overloadDoc = new StringBuilder();
+				appendEmmyLuaDoc(
+					signature.stream()
+						.filter(function -> !primaryDocs.contains(function.doc().get()))
+						.collect(Collectors.toList()),
+					overloadDoc
+				);
+				final List<String> params = getParamNames(overload);
+				IntStream.range(0, params.size()).forEach(
+					idx -> {
+						final String doc = overload.arguments().get(idx).doc().get();
+						if (doc != null && !doc.isBlank()) {
+							overloadDoc.append("--- * `").append(params.get(idx)).append("` ")
+								.append(doc.lines().collect(Collectors.joining(" ")).trim())
+								.append('\n');
+						}
+					}
+				);
+				final String returnDoc = overload.returnDoc().get();
+				if (getLuaReturnType(luaClass, overload) != null && !returnDoc.isBlank()) {
+					overloadDoc.append("--- * returns ")
+						.append(returnDoc.lines().collect(Collectors.joining(" ")).trim())
+						.append('\n');
+				}
+				if (overloadDoc.length() > 0) {
+					if (buf.length() > start) {
+						buf.append("---\n");
+					}
+					buf.append("---Overload `").append(
+						getFunctionSignature(luaClass, overload, params)
+					).append("`:\n").append(overloadDoc);
+				}
+			}
+		);
 		Optional.ofNullable(FUNCTION_DOC_PROPERTIES.getProperty(fullFunctionName)).ifPresent(
 			doc -> {
 				buf.append("---\n--- User comments:\n");
@@ -367,8 +733,23 @@ public class ArdourLuaScraper {
 		);
 	}
 
+	/**
+	 * Appends the distinct docs of the overloads, separated by empty lines.
+	 */
+	private static void appendEmmyLuaDoc(List<LuaFunction> overloads, StringBuilder buf) {
+		final boolean[] first = { true };
+		overloads.stream().map(function -> function.doc().get())
+			.filter(doc -> !doc.isBlank()).distinct().forEach(
+				doc -> {
+					if (!first[0]) buf.append("---\n");
+					first[0] = false;
+					appendEmmyLuaDoc(doc, buf);
+				}
+			);
+	}
+
 	private static void appendEmmyLuaDoc(LuaClass luaClass, StringBuilder buf) {
-		appendEmmyLuaDoc(luaClass.getClassDoc(), buf);
+		appendEmmyLuaDoc(luaClass.getClassDoc().get(), buf);
 		Optional.ofNullable(CLASS_DOC_PROPERTIES.getProperty(luaClass.getName())).ifPresent(
 			doc -> {
 				buf.append("---\n--- User comments:\n");
@@ -385,6 +766,16 @@ public class ArdourLuaScraper {
 		};
 	}
 
+	private static List<String> getParamNames(LuaFunction function) {
+		final List<String> params = getParamNames(
+			function.arguments().stream().map(LuaField::type).collect(Collectors.toList())
+		);
+		IntStream.range(0, params.size())
+			.filter(idx -> function.arguments().get(idx).name() != null)
+			.forEach(idx -> params.set(idx, function.arguments().get(idx).name()));
+		return params;
+	}
+
 	private static List<String> getParamNames(List<String> types) {
 		return IntStream.range(0, types.size())
 			.mapToObj(idx -> toParamName(toLuaType(types.get(idx)), idx))
@@ -403,7 +794,7 @@ public class ArdourLuaScraper {
 		return result;
 	}
 
-	private static String toLuaType(String cType) {
+	static String toLuaType(String cType) {
 		final String type = cType.trim();
 		if ("bool".equals(type) || "bool&".equals(type)) {
 			return "boolean";
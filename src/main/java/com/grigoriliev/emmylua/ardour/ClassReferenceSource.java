@@ -0,0 +1,246 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * Loads class reference pages in the {@code #luaref} format from a URL, a local file, or
+ * an HTML file inside a {@code .zip}, {@code .tar.gz} or {@code .tgz} snapshot, e.g.
+ * {@code luaref-2022-05.zip!class_reference/index.html}. The entry may be omitted if the
+ * archive has a single HTML file.
+ */
+public class ClassReferenceSource {
+	/**
+	 * A loaded, not yet parsed page.
+	 *
+	 * @param charset {@code null} if it should be detected from the page.
+	 */
+	public record Page(String location, byte[] body, String charset) { }
+
+	/** Receives the HTML files of an archive in archive order. */
+	@FunctionalInterface
+	private interface EntryVisitor {
+		void visit(String name, byte[] data) throws IOException;
+	}
+
+	/** Keeps only the requested HTML file of an archive and the names of all of them. */
+	private static class EntrySelector implements EntryVisitor {
+		private final String entryName;
+		private final List<String> names = new ArrayList<>();
+		private byte[] data;
+
+		EntrySelector(String entryName) {
+			this.entryName = entryName;
+		}
+
+		@Override public void visit(String name, byte[] data) {
+			names.add(name);
+			if (entryName.isEmpty() ? names.size() == 1 : name.equals(entryName)) {
+				this.data = data;
+			}
+		}
+	}
+
+	public static boolean isUrl(String location) {
+		return location.startsWith("http://") || location.startsWith("https://");
+	}
+
+	/**
+	 * @return the length of the archive path in the location, -1 if it is not an archive.
+	 */
+	private static int getArchivePathLength(String location) {
+		for (String ext : new String[] { ".zip", ".tar.gz", ".tgz" }) {
+			final int idx = location.indexOf(ext + "!");
+			if (idx != -1) return idx + ext.length();
+			if (location.endsWith(ext)) return location.length();
+		}
+		return -1;
+	}
+
+	public static Page fetch(String location) throws IOException {
+		if (isUrl(location)) {
+			final Connection.Response response = Jsoup.connect(location).maxBodySize(0).execute();
+			return new Page(location, response.bodyAsBytes(), response.charset());
+		}
+		final int archivePathLength = getArchivePathLength(location);
+		if (archivePathLength != -1) {
+			final Path archivePath = Paths.get(location.substring(0, archivePathLength));
+			final String entryName = archivePathLength == location.length() ?
+				"" : location.substring(archivePathLength + 1);
+			return new Page(location, readEntry(archivePath, location, entryName), null);
+		}
+		return new Page(location, Files.readAllBytes(Paths.get(location)), null);
+	}
+
+	public static Document parse(Page page) throws IOException {
+		final int archivePathLength = getArchivePathLength(page.location());
+		return Jsoup.parse(
+			new ByteArrayInputStream(page.body()),
+			page.charset(),
+			isUrl(page.location()) ? page.location() : Paths.get(
+				archivePathLength == -1 ?
+					page.location() : page.location().substring(0, archivePathLength)
+			).toUri().toString()
+		);
+	}
+
+	/**
+	 * Checks that the archive has the entry, or a single HTML file if no entry is given.
+	 *
+	 * @param names the HTML files of the archive.
+	 */
+	private static void checkEntry(
+		List<String> names, String location, String entryName
+	) throws IOException {
+		if (entryName.isEmpty() && names.size() != 1) {
+			throw new IOException(
+				"Expected a single HTML file, found " + names.size() +
+					", specify one of " + names + ": " + location
+			);
+		}
+		if (!entryName.isEmpty() && !names.contains(entryName)) {
+			throw new IOException("No HTML file " + entryName + " in " + location);
+		}
+	}
+
+	/**
+	 * Decompresses the archive and keeps only the requested HTML file in memory.
+	 */
+	private static byte[] readEntry(
+		Path archivePath, String location, String entryName
+	) throws IOException {
+		final EntrySelector selector = new EntrySelector(entryName);
+		readArchive(archivePath, selector);
+		checkEntry(selector.names, location, entryName);
+		return selector.data;
+	}
+
+	/**
+	 * Streams the archive, so that only one decompressed HTML file is in memory at a time.
+	 */
+	private static void readArchive(Path path, EntryVisitor visitor) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			if (path.toString().endsWith(".zip")) {
+				try (ZipInputStream zip = new ZipInputStream(in)) {
+					readZipEntries(zip, visitor);
+				}
+			} else {
+				try (GZIPInputStream gzip = new GZIPInputStream(in)) {
+					readTarEntries(gzip, visitor);
+				}
+			}
+		}
+	}
+
+	private static boolean isHtml(String name) {
+		return name.endsWith(".html") || name.endsWith(".htm");
+	}
+
+	private static void readZipEntries(
+		ZipInputStream zip, EntryVisitor visitor
+	) throws IOException {
+		for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+			if (!entry.isDirectory() && isHtml(entry.getName())) {
+				visitor.visit(entry.getName(), zip.readAllBytes());
+			}
+		}
+	}
+
+	/**
+	 * Reads the regular files of a ustar, GNU or POSIX tar stream. Long names of GNU and pax
+	 * headers are supported; other extended attributes are skipped.
+	 */
+	private static void readTarEntries(InputStream in, EntryVisitor visitor) throws IOException {
+		final byte[] header = new byte[512];
+		String longName = null;
+		while (in.readNBytes(header, 0, header.length) == header.length && header[0] != 0) {
+			final long size = parseOctal(header, 124, 12);
+			final byte type = header[156];
+			String name = getTarString(header, 0, 100);
+			if (longName != null) {
+				name = longName;
+				longName = null;
+			} else if (
+				// The name prefix is a POSIX field, GNU headers use it for other data.
+				getTarString(header, 257, 6).equals("ustar") && header[345] != 0
+			) {
+				name = getTarString(header, 345, 155) + "/" + name;
+			}
+			if (name.startsWith("./")) {
+				name = name.substring(2);
+			}
+
+			if (type == 'L') {
+				longName = getTarString(readTarData(in, size), 0, (int) size);
+			} else if (type == 'x') {
+				longName = getPaxPath(readTarData(in, size));
+			} else if ((type == '0' || type == 0) && isHtml(name)) {
+				visitor.visit(name, readTarData(in, size));
+			} else {
+				in.skipNBytes(size + getTarPadding(size));
+			}
+		}
+	}
+
+	/**
+	 * @return the {@code path} of the pax records, e.g. {@code 30 path=class_reference.html\n},
+	 * {@code null} if there is none.
+	 */
+	private static String getPaxPath(byte[] data) {
+		final String records = new String(data, StandardCharsets.UTF_8);
+		String path = null;
+		for (String record : records.split("\n")) {
+			final int idx = record.indexOf(" path=");
+			if (idx != -1) {
+				path = record.substring(idx + " path=".length());
+			}
+		}
+		return path;
+	}
+
+	private static byte[] readTarData(InputStream in, long size) throws IOException {
+		final byte[] data = in.readNBytes(Math.toIntExact(size));
+		if (data.length != size) {
+			throw new IOException("Truncated tar entry");
+		}
+		in.skipNBytes(getTarPadding(size));
+		return data;
+	}
+
+	private static long getTarPadding(long size) {
+		return (512 - size % 512) % 512;
+	}
+
+	private static String getTarString(byte[] buf, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && buf[end] != 0) end++;
+		return new String(buf, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static long parseOctal(byte[] buf, int offset, int length) throws IOException {
+		long result = 0;
+		int i = offset;
+		while (i < offset + length && buf[i] == ' ') i++;
+		for (; i < offset + length && buf[i] != 0 && buf[i] != ' '; i++) {
+			if (buf[i] < '0' || buf[i] > '7') {
+				throw new IOException("Invalid tar header");
+			}
+			result = result * 8 + buf[i] - '0';
+		}
+		return result;
+	}
+}
@@ -0,0 +1,57 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A doc text, which is extracted from the class reference only when it is first needed and
+ * is then cached. The extraction may run on any thread, but runs at most once. As jsoup nodes
+ * aren't thread-safe, a supplier may only read its detached class section, whose docs are all
+ * extracted by the thread rendering the class.
+ * <p>
+ * Docs are equal if their texts are equal. The hash code doesn't depend on the text, so that
+ * hashing a class member doesn't extract its doc; the text is extracted only when members are
+ * otherwise equal.
+ */
+public final class Doc implements Supplier<String> {
+	private Supplier<String> supplier;
+	private volatile boolean extracted;
+	private String text;
+
+	private Doc(Supplier<String> supplier) {
+		this.supplier = supplier;
+	}
+
+	public static Doc lazy(Supplier<String> supplier) {
+		return new Doc(supplier);
+	}
+
+	/**
+	 * @return the text, which may be {@code null} if the doc is missing.
+	 */
+	@Override public String get() {
+		if (!extracted) {
+			synchronized (this) {
+				if (!extracted) {
+					text = supplier.get();
+					// The supplier keeps the document elements reachable.
+					supplier = null;
+					extracted = true;
+				}
+			}
+		}
+		return text;
+	}
+
+	@Override public boolean equals(Object o) {
+		return this == o || o instanceof Doc doc && Objects.equals(get(), doc.get());
+	}
+
+	@Override public int hashCode() {
+		return 0;
+	}
+
+	@Override public String toString() {
+		return String.valueOf(get());
+	}
+}
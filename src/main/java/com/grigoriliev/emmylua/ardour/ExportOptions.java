@@ -0,0 +1,46 @@
+package com.grigoriliev.emmylua.ardour;
+
+/**
+ * Options of the EmmyLua annotation export.
+ *
+ * @param parallel whether class and enum blocks are rendered concurrently. The output is the
+ * same as in serial mode.
+ * @param mergeOverloads whether the overloads of a function are emitted as one definition
+ * with {@code ---@overload} annotations, instead of a definition per overload.
+ * @param enumEncoding how enums and constants are emitted.
+ * @param docs whether the docs of classes and members are emitted. Docs are extracted from
+ * the class reference only if they are emitted.
+ */
+public record ExportOptions(
+	boolean parallel, boolean mergeOverloads, EnumEncoding enumEncoding, boolean docs
+) {
+	public enum EnumEncoding {
+		/** Every enum value is a documented global table. */
+		TABLES,
+		/**
+		 * Every enum is a single {@code ---@enum} table, which lists its values as fields,
+		 * and the enums nested in a class are emitted with the class.
+		 */
+		COMPACT
+	}
+
+	public static final ExportOptions DEFAULT = new ExportOptions(
+		true, true, EnumEncoding.TABLES, true
+	);
+
+	public ExportOptions withParallel(boolean parallel) {
+		return new ExportOptions(parallel, mergeOverloads(), enumEncoding(), docs());
+	}
+
+	public ExportOptions withMergeOverloads(boolean mergeOverloads) {
+		return new ExportOptions(parallel(), mergeOverloads, enumEncoding(), docs());
+	}
+
+	public ExportOptions withEnumEncoding(EnumEncoding enumEncoding) {
+		return new ExportOptions(parallel(), mergeOverloads(), enumEncoding, docs());
+	}
+
+	public ExportOptions withDocs(boolean docs) {
+		return new ExportOptions(parallel(), mergeOverloads(), enumEncoding(), docs);
+	}
+}
@@ -0,0 +1,431 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.grigoriliev.emmylua.ardour.ArdourLuaScraper.EmittedBlock;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * Runs the generation as fetch, parse, extract, model, emit and write stages, which are
+ * joined by bounded queues. The sources are fetched concurrently, class sections are extracted
+ * by several workers as soon as their page is parsed, and the emitted blocks are written while
+ * the following ones are still rendered. A full queue blocks the producing stage, so no stage
+ * can run arbitrarily far ahead.
+ */
+public class GenerationPipeline {
+	private static final int QUEUE_CAPACITY = 256;
+
+	private record FetchedPage(int sourceIdx, ClassReferenceSource.Page page) { }
+
+	/**
+	 * A class or enum section of a class reference page, numbered in document order.
+	 *
+	 * @param element the heading of the section, which is detached from the document, so that
+	 * it is read only by the worker extracting it, as jsoup nodes aren't thread-safe.
+	 */
+	private record Section(int sourceIdx, int seqNum, Element element, boolean luaEnum) { }
+
+	private record ExtractedSection(int sourceIdx, int seqNum, Object result) { }
+
+	/**
+	 * @param busyNanos the time spent in the stage, summed over its threads.
+	 * @param allocatedBytes the heap allocated by the stage, summed over its threads, -1 if
+	 * the JVM doesn't measure it.
+	 */
+	public record StageStats(String name, int threads, long busyNanos, long allocatedBytes) { }
+
+	public record Stats(long wallNanos, List<StageStats> stages) { }
+
+	private static volatile LongSupplier allocationProbe = () -> -1;
+
+	/**
+	 * Enables the allocation accounting of the stages, e.g. with
+	 * {@code com.sun.management.ThreadMXBean.getCurrentThreadAllocatedBytes()}, so that the
+	 * pipeline itself doesn't depend on {@code jdk.management}.
+	 *
+	 * @param probe returns the heap allocated by the current thread so far, -1 if it isn't
+	 * measured.
+	 */
+	public static void setAllocationProbe(LongSupplier probe) {
+		allocationProbe = probe;
+	}
+
+	/**
+	 * Busy time and allocation accounting of a pipeline stage.
+	 */
+	private static class Stage {
+		private final String name;
+		private final int threads;
+		private final AtomicLong busyNanos = new AtomicLong();
+		private final AtomicLong allocatedBytes = new AtomicLong();
+		private volatile boolean allocationMeasured;
+
+		Stage(String name, int threads) {
+			this.name = name;
+			this.threads = threads;
+		}
+
+		<T> T measure(Callable<T> task) throws Exception {
+			final LongSupplier probe = allocationProbe;
+			final long start = System.nanoTime();
+			final long allocatedStart = probe.getAsLong();
+			try {
+				return task.call();
+			} finally {
+				busyNanos.addAndGet(System.nanoTime() - start);
+				final long allocatedEnd = allocatedStart == -1 ? -1 : probe.getAsLong();
+				if (allocatedEnd != -1) {
+					allocatedBytes.addAndGet(allocatedEnd - allocatedStart);
+					allocationMeasured = true;
+				}
+			}
+		}
+
+		StageStats getStats() {
+			return new StageStats(
+				name,
+				threads,
+				busyNanos.get(),
+				allocationMeasured ? allocatedBytes.get() : -1
+			);
+		}
+
+		String getReport(long wallNanos) {
+			final long busy = busyNanos.get();
+			return String.format(
+				"%-8s %2d thread(s), busy %7d ms, utilization %3d%%",
+				name,
+				threads,
+				busy / 1_000_000,
+				wallNanos == 0 ? 0 : busy * 100 / (wallNanos * threads)
+			) + (
+				allocationMeasured ?
+					String.format(", allocated %6d MB", allocatedBytes.get() >> 20) : ""
+			);
+		}
+	}
+
+	private static final Object END = new Object();
+
+	/** Ends the emitted blocks. */
+	private static final Future<EmittedBlock> END_BLOCK = CompletableFuture.completedFuture(null);
+
+	private final List<String> sources;
+	private final LuaModel.ConflictPolicy conflictPolicy;
+	private final Path outputPath;
+	private final Path symbolIndexPath;
+	private final ExportOptions options;
+	private final TypeGraph.Validation validation;
+	private final TreeShaker.Roots roots;
+	private final int workers;
+
+	private final Stage fetchStage;
+	private final Stage parseStage = new Stage("parse", 1);
+	/** Merges, tree-shakes and validates the model. */
+	private final Stage modelStage = new Stage("model", 1);
+	private final Stage extractStage;
+	private final Stage emitStage;
+	private final Stage writeStage = new Stage("write", 1);
+
+	private Stats stats;
+
+	/**
+	 * @return the measurements of the last run, {@code null} before the first run.
+	 */
+	public Stats getStats() { return stats; }
+
+	/**
+	 * @param sources the locations of the class reference pages, which are merged into one model.
+	 * @param symbolIndexPath {@code null} if no symbol index should be written.
+	 * @param roots the roots of the emitted subset, empty to emit the whole model.
+	 */
+	public GenerationPipeline(
+		List<String> sources,
+		LuaModel.ConflictPolicy conflictPolicy,
+		Path outputPath,
+		Path symbolIndexPath,
+		ExportOptions options,
+		TypeGraph.Validation validation,
+		TreeShaker.Roots roots
+	) {
+		this.sources = sources;
+		this.conflictPolicy = conflictPolicy;
+		this.outputPath = outputPath;
+		this.symbolIndexPath = symbolIndexPath;
+		this.options = options;
+		this.validation = validation;
+		this.roots = roots;
+		workers = options.parallel() ? Runtime.getRuntime().availableProcessors() : 1;
+		fetchStage = new Stage("fetch", sources.size());
+		extractStage = new Stage("extract", workers);
+		emitStage = new Stage("emit", workers);
+	}
+
+	public void run() throws IOException {
+		final BlockingQueue<Object> fetchedQueue = new ArrayBlockingQueue<>(1);
+		final BlockingQueue<Object> sectionQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		final BlockingQueue<Future<EmittedBlock>> blockQueue =
+			new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		final ConcurrentLinkedQueue<ExtractedSection> extracted = new ConcurrentLinkedQueue<>();
+		final CountDownLatch extractionDone = new CountDownLatch(workers);
+
+		// One thread per stage and source, plus the extraction workers; the emitted blocks are
+		// rendered by a separate pool of the same size.
+		final int tasks = sources.size() + 3 + workers;
+		final ExecutorService stageExecutor = Executors.newFixedThreadPool(tasks);
+		final ExecutorService workerExecutor = Executors.newFixedThreadPool(workers);
+		final ExecutorCompletionService<Void> completionService =
+			new ExecutorCompletionService<>(stageExecutor);
+
+		final long start = System.nanoTime();
+		try {
+			for (int i = 0; i < sources.size(); i++) {
+				final int sourceIdx = i;
+				completionService.submit(() -> fetch(sourceIdx, fetchedQueue));
+			}
+			completionService.submit(() -> parse(fetchedQueue, sectionQueue));
+			for (int i = 0; i < workers; i++) {
+				completionService.submit(() -> extract(sectionQueue, extracted, extractionDone));
+			}
+			completionService.submit(
+				() -> emit(extracted, extractionDone, blockQueue, workerExecutor)
+			);
+			completionService.submit(() -> write(blockQueue));
+
+			// A failed stage is reported as soon as it completes, and the others are
+			// interrupted by shutdownNow() below.
+			for (int i = 0; i < tasks; i++) {
+				completionService.take().get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Generation interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("Generation failed", e.getCause());
+		} finally {
+			stageExecutor.shutdownNow();
+			workerExecutor.shutdownNow();
+		}
+
+		final long wallNanos = System.nanoTime() - start;
+		final List<Stage> stages =
+			List.of(fetchStage, parseStage, extractStage, modelStage, emitStage, writeStage);
+		stats = new Stats(
+			wallNanos, stages.stream().map(Stage::getStats).collect(Collectors.toList())
+		);
+		System.err.println("Generation took " + wallNanos / 1_000_000 + " ms");
+		stages.forEach(stage -> System.err.println("\t" + stage.getReport(wallNanos)));
+	}
+
+	private Void fetch(int sourceIdx, BlockingQueue<Object> fetchedQueue) throws Exception {
+		fetchedQueue.put(
+			new FetchedPage(
+				sourceIdx,
+				fetchStage.measure(() -> ClassReferenceSource.fetch(sources.get(sourceIdx)))
+			)
+		);
+		return null;
+	}
+
+	private Void parse(BlockingQueue<Object> fetchedQueue, BlockingQueue<Object> sectionQueue)
+		throws Exception
+	{
+		for (int i = 0; i < sources.size(); i++) {
+			final FetchedPage fetched = (FetchedPage) fetchedQueue.take();
+			final int sourceIdx = fetched.sourceIdx();
+			final List<Element> headings = parseStage.measure(
+				() -> ArdourLuaScraper.detachSections(ClassReferenceSource.parse(fetched.page()))
+			);
+			int seqNum = 0;
+			final Iterator<Element> classElements =
+				ArdourLuaScraper.getClassDefElementStream(headings).iterator();
+			while (classElements.hasNext()) {
+				sectionQueue.put(new Section(sourceIdx, seqNum++, classElements.next(), false));
+			}
+			final Iterator<Element> enumElements =
+				ArdourLuaScraper.getEnumElementStream(headings).iterator();
+			while (enumElements.hasNext()) {
+				sectionQueue.put(new Section(sourceIdx, seqNum++, enumElements.next(), true));
+			}
+		}
+		for (int i = 0; i < workers; i++) {
+			sectionQueue.put(END);
+		}
+		return null;
+	}
+
+	private Void extract(
+		BlockingQueue<Object> sectionQueue,
+		ConcurrentLinkedQueue<ExtractedSection> extracted,
+		CountDownLatch extractionDone
+	) throws Exception {
+		for (Object item = sectionQueue.take(); item != END; item = sectionQueue.take()) {
+			final Section section = (Section) item;
+			extracted.add(
+				new ExtractedSection(
+					section.sourceIdx(),
+					section.seqNum(),
+					extractStage.measure(
+						() -> section.luaEnum() ?
+							ArdourLuaScraper.toLuaEnum(section.element()) :
+							new LuaClass(section.element())
+					)
+				)
+			);
+		}
+		extractionDone.countDown();
+		return null;
+	}
+
+	private Void emit(
+		ConcurrentLinkedQueue<ExtractedSection> extracted,
+		CountDownLatch extractionDone,
+		BlockingQueue<Future<EmittedBlock>> blockQueue,
+		ExecutorService workerExecutor
+	) throws Exception {
+		extractionDone.await();
+
+		final LuaModel mergedModel = modelStage.measure(
+			() -> {
+				// Sections are extracted out of order, but the model depends on document order.
+				final Map<Integer, List<Object>> results = extracted.stream()
+					.sorted(Comparator.comparingInt(ExtractedSection::seqNum))
+					.collect(
+						Collectors.groupingBy(
+							ExtractedSection::sourceIdx,
+							Collectors.mapping(ExtractedSection::result, Collectors.toList())
+						)
+					);
+				return LuaModel.merge(
+					IntStream.range(0, sources.size()).mapToObj(
+						idx -> new LuaModel.SourceModel(
+							sources.get(idx),
+							results.getOrDefault(idx, List.of()).stream()
+								.filter(LuaClass.class::isInstance).map(LuaClass.class::cast)
+								.collect(Collectors.toList()),
+							results.getOrDefault(idx, List.of()).stream()
+								.filter(LuaEnum.class::isInstance).map(LuaEnum.class::cast)
+								.collect(Collectors.toList())
+						)
+					).collect(Collectors.toList()),
+					conflictPolicy
+				);
+			}
+		);
+
+		final LuaModel model = roots.isEmpty() ?
+			mergedModel : modelStage.measure(() -> TreeShaker.shake(mergedModel, roots));
+
+		if (validation != TypeGraph.Validation.OFF) {
+			validate(model);
+		}
+
+		// The rendering is the same as in ArdourLuaScraper.exportEmmyLuaAnnotations(). The futures
+		// are queued in output order; the bounded queue limits how many blocks
+		// are rendered ahead of the writer.
+		for (Consumer<EmittedBlock> blockWriter : ArdourLuaScraper.getBlockWriters(model, options)) {
+			blockQueue.put(
+				workerExecutor.submit(
+					() -> emitStage.measure(
+						() -> {
+							final EmittedBlock block = new EmittedBlock();
+							blockWriter.accept(block);
+							return block;
+						}
+					)
+				)
+			);
+		}
+		blockQueue.put(END_BLOCK);
+		return null;
+	}
+
+	private void validate(LuaModel model) throws Exception {
+		final List<TypeGraph.Problem> problems = modelStage.measure(
+			() -> new TypeGraph(model).validate()
+		);
+		problems.forEach(System.err::println);
+		final long errors = problems.stream()
+			.filter(problem -> problem.severity() == TypeGraph.Severity.ERROR).count();
+		if (errors > 0 && validation == TypeGraph.Validation.FAIL) {
+			throw new IllegalStateException("Type validation failed with " + errors + " error(s)");
+		}
+	}
+
+	private Void write(BlockingQueue<Future<EmittedBlock>> blockQueue) throws Exception {
+		final SymbolIndex symbolIndex = new SymbolIndex();
+		final SymbolIndex.Locator locator = new SymbolIndex.Locator();
+		int charOffset = 0;
+		// A failed run must not leave a truncated output behind.
+		final Path tmpPath = outputPath.resolveSibling(outputPath.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8)) {
+			final String header = ArdourLuaScraper.getFileHeader(sources);
+			writer.write(header);
+			locator.advance(header);
+			charOffset += header.length();
+
+			for (
+				Future<EmittedBlock> future = blockQueue.take();
+				future != END_BLOCK;
+				future = blockQueue.take()
+			) {
+				final EmittedBlock block = future.get();
+				final int blockOffset = charOffset;
+				writeStage.measure(
+					() -> {
+						writer.append(block.buf());
+						if (symbolIndexPath != null) {
+							block.symbolIndex().resolve(block.buf(), locator);
+							symbolIndex.addAll(block.symbolIndex(), blockOffset);
+						}
+						return null;
+					}
+				);
+				charOffset += block.buf().length();
+			}
+		} catch (Exception e) {
+			Files.deleteIfExists(tmpPath);
+			throw e;
+		}
+		Files.move(tmpPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+
+		if (symbolIndexPath != null) {
+			writeStage.measure(
+				() -> {
+					symbolIndex.writeJson(symbolIndexPath, outputPath.getFileName().toString());
+					return null;
+				}
+			);
+		}
+		return null;
+	}
+}
@@ -44,8 +44,8 @@ public class LuaClass {
 	private final List<LuaFunction> luaFunctions;
 	public List<LuaFunction> getLuaFunctions() { return luaFunctions; }
 
-	private final String classDoc;
-	public String getClassDoc() { return classDoc; }
+	private final Doc classDoc;
+	public Doc getClassDoc() { return classDoc; }
 
 	private final boolean namespace;
 	public boolean isNamespace() { return namespace; }
@@ -97,6 +97,48 @@ public class LuaClass {
 		classDoc = getClassDoc(classElement);
 	}
 
+	private LuaClass(
+		Kind kind,
+		String name,
+		String baseClassName,
+		List<LuaField> luaFields,
+		List<LuaFunction> luaFunctions,
+		Doc classDoc
+	) {
+		this.kind = kind;
+		this.name = name;
+		this.baseClassName = baseClassName;
+		this.luaFields = luaFields;
+		this.luaFunctions = luaFunctions;
+		this.classDoc = classDoc;
+		namespace = kind == Kind.NAMESPACE;
+	}
+
+	/**
+	 * @return a class with the members of this class followed by the members of the other
+	 * class, which are not defined in this one. The base class and the class doc of this class
+	 * take precedence, unless they are empty.
+	 */
+	public LuaClass union(LuaClass other) {
+		if (!name.equals(other.name)) {
+			throw new IllegalArgumentException(name + " != " + other.name);
+		}
+		final Set<String> fieldNames = luaFields.stream()
+			.map(LuaField::name).collect(Collectors.toSet());
+		return new LuaClass(
+			kind,
+			name,
+			baseClassName.isEmpty() ? other.baseClassName : baseClassName,
+			Stream.concat(
+				luaFields.stream(),
+				other.luaFields.stream().filter(field -> !fieldNames.contains(field.name()))
+			).collect(Collectors.toList()),
+			Stream.concat(luaFunctions.stream(), other.luaFunctions.stream())
+				.distinct().collect(Collectors.toList()),
+			Doc.lazy(() -> classDoc.get().isBlank() ? other.classDoc.get() : classDoc.get())
+		);
+	}
+
 	@Override public String toString() {
 		return "Class: " + name + "\n\tFunctions: " +
 			luaFunctions.stream().map(Object::toString).collect(Collectors.joining(", "))
@@ -165,15 +207,21 @@ public class LuaClass {
 			).distinct().collect(Collectors.toList());
 	}
 
-	private static String getClassDoc(Element classElement) {
-		return JSoupUtil.findSibling(
-			classElement,
-			element -> element.hasClass("classdox"),
-			element -> "h3".equals(element.tagName())
-		).map(Element::text).orElse("");
+	private static Doc getClassDoc(Element classElement) {
+		return Doc.lazy(
+			() -> JSoupUtil.findSibling(
+				classElement,
+				element -> element.hasClass("classdox"),
+				element -> "h3".equals(element.tagName())
+			).map(Element::text).orElse("")
+		);
+	}
+
+	private static Doc getMemberDoc(Element element) {
+		return Doc.lazy(() -> extractMemberDoc(element));
 	}
 
-	private static String getMemberDoc(Element element) {
+	private static String extractMemberDoc(Element element) {
 		return Optional.ofNullable(element.nextElementSibling())
 			.map(el -> el.select(".doc > .dox"))
 			.filter(elements -> !elements.isEmpty())
@@ -220,7 +268,11 @@ public class LuaClass {
 		return false;
 	}
 
-	private static String getReturnDoc(String functionName, Element element) {
+	private static Doc getReturnDoc(String functionName, Element element) {
+		return Doc.lazy(() -> extractReturnDoc(functionName, element));
+	}
+
+	private static String extractReturnDoc(String functionName, Element element) {
 		return Optional.ofNullable(element.nextElementSibling())
 			.map(el -> el.select(".doc > .dox > .result-discussion"))
 			.filter(elements -> !elements.isEmpty())
@@ -243,8 +295,11 @@ public class LuaClass {
 			).orElse("");
 	}
 
-	private static Map<Integer, Map.Entry<String, String>> getParamsInfo(Element element) {
-		final Map<Integer, Map.Entry<String, String>> result = new TreeMap<>();
+	/**
+	 * @return the name and the description element of each documented parameter.
+	 */
+	private static Map<Integer, Map.Entry<String, Element>> getParamsInfo(Element element) {
+		final Map<Integer, Map.Entry<String, Element>> result = new TreeMap<>();
 		Optional.ofNullable(element.nextElementSibling())
 			.map(el -> el.select(".doc > .dox > dl"))
 			.ifPresent(
@@ -271,7 +326,7 @@ public class LuaClass {
 									final int idx = Integer. valueOf(
 										className.substring("param-descr-index-".length())
 									);
-									result.get(idx).setValue(el.text());
+									result.get(idx).setValue(el);
 								} catch (NumberFormatException e) {
 									System.err.println("Failed to get param index: " + className);
 									System.err.println("\tText: " + el.text());
@@ -311,7 +366,7 @@ public class LuaClass {
 	}
 
 	private static List<LuaField> getParams(String functionName, Element element) {
-		final Map<Integer, Map.Entry<String, String>> paramInfoMap = getParamsInfo(element);
+		final Map<Integer, Map.Entry<String, Element>> paramInfoMap = getParamsInfo(element);
 
 		final List<String> paramTypes = element.child(1)
 			.select(".functionargs > a,.functionargs > span").stream()
@@ -323,25 +378,32 @@ public class LuaClass {
 		return IntStream.range(0, paramTypes.size()).mapToObj(
 			idx -> {
 				String paramName = null;
-				String paramDoc = null;
-				final Map.Entry<String, String> entry = paramInfoMap.get(idx);
+				Element paramDocElement = null;
+				final Map.Entry<String, Element> entry = paramInfoMap.get(idx);
 				if (entry != null) {
 					paramName = entry.getKey();
-					paramDoc = entry.getValue();
+					paramDocElement = entry.getValue();
 				}
 
 				final String info = ArdourLuaScraper.FUNCTION_DOC_PROPERTIES.getProperty(
 					functionName + ":" + idx
 				);
-				if (info != null) {
-					if (paramName == null) {
-						paramName = info.substring(0, info.indexOf(':'));
-					}
-					paramDoc = (paramDoc == null ? "" : paramDoc + " ") +
-						info.substring(info.indexOf(':') + 1);
+				if (info != null && paramName == null) {
+					paramName = info.substring(0, info.indexOf(':'));
 				}
 
-				return new LuaField(paramName, paramTypes.get(idx), paramDoc);
+				final Element descrElement = paramDocElement;
+				return new LuaField(
+					paramName,
+					paramTypes.get(idx),
+					Doc.lazy(
+						() -> {
+							final String paramDoc = descrElement == null ? null : descrElement.text();
+							return info == null ? paramDoc : (paramDoc == null ? "" : paramDoc + " ") +
+								info.substring(info.indexOf(':') + 1);
+						}
+					)
+				);
 			}
 		).collect(Collectors.toList());
 	}
@@ -1,6 +1,8 @@
 package com.grigoriliev.emmylua.ardour;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public record LuaEnum (String type, List<String> enumVars, LuaClass parent) {
 	public LuaEnum(String type, List<String> enumVars) {
@@ -10,4 +12,24 @@ public record LuaEnum (String type, List<String> enumVars, LuaClass parent) {
 	public LuaEnum withParent(LuaClass parent) {
 		return new LuaEnum(type(), enumVars(), parent);
 	}
+
+	/**
+	 * @return whether all the values are named after the enum, e.g. {@code ARDOUR.Kind.A}.
+	 */
+	public boolean hasQualifiedValues() {
+		return enumVars().stream().allMatch(var -> var.startsWith(type() + "."));
+	}
+
+	/**
+	 * @return an enum with the values of this enum followed by the other's values, which
+	 * are not in this one.
+	 */
+	public LuaEnum union(LuaEnum other) {
+		return new LuaEnum(
+			type(),
+			Stream.concat(enumVars().stream(), other.enumVars().stream())
+				.distinct().collect(Collectors.toList()),
+			parent()
+		);
+	}
 }
@@ -1,5 +1,8 @@
 package com.grigoriliev.emmylua.ardour;
 
-public record LuaField (String name, String type, String doc) {
+/**
+ * @param doc the doc, whose text is {@code null} if a parameter has none.
+ */
+public record LuaField (String name, String type, Doc doc) {
 
 }
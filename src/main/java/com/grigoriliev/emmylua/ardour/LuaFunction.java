@@ -3,7 +3,7 @@ package com.grigoriliev.emmylua.ardour;
 import java.util.List;
 
 public record LuaFunction (
-	String name, String returnType, List<LuaField> arguments, String doc, String returnDoc
+	String name, String returnType, List<LuaField> arguments, Doc doc, Doc returnDoc
 ) {
 	public boolean isConstructor() { return returnType() == null; }
 
@@ -0,0 +1,182 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The scraped classes and enums, linked to their parent classes and ordered for emission.
+ */
+public class LuaModel {
+	/**
+	 * How a class or enum, which is defined by more than one source, is merged.
+	 */
+	public enum ConflictPolicy {
+		/** The definition of the later source replaces the earlier one. */
+		OVERRIDE,
+		/** The members of the later source are added to the earlier definition. */
+		UNION,
+		/** Repeated definitions are rejected. */
+		ERROR
+	}
+
+	/**
+	 * The classes and enums extracted from a single class reference page, in document order.
+	 */
+	public record SourceModel(String location, List<LuaClass> luaClasses, List<LuaEnum> luaEnums) { }
+
+	private final List<LuaClass> luaClasses;
+	public List<LuaClass> getLuaClasses() { return luaClasses; }
+
+	private final List<LuaEnum> luaEnums;
+	public List<LuaEnum> getLuaEnums() { return luaEnums; }
+
+	private final Map<String, LuaClass> classMap = new HashMap<>();
+	public Map<String, LuaClass> getClassMap() { return classMap; }
+
+	private final NamespaceTree namespaceTree;
+	public NamespaceTree getNamespaceTree() { return namespaceTree; }
+
+	public LuaModel(Stream<LuaEnum> luaEnumStream, Stream<LuaClass> luaClassStream) {
+		luaClasses = luaClassStream.sorted(
+			Comparator.comparingInt(luaClass -> luaClass.getName().length())
+		).collect(Collectors.toList());
+
+		luaClasses.forEach(
+			luaClass -> {
+				final String ns = ArdourLuaScraper.getNamespace(luaClass.getName());
+				if (ns != null) {
+					Optional.ofNullable(classMap.get(ns)).ifPresent(
+						parent -> {
+							parent.getNestedClasses().add(luaClass);
+							luaClass.setParent(parent);
+						}
+					);
+				}
+				if (classMap.put(luaClass.getName(), luaClass) != null) {
+					throw new IllegalStateException();
+				}
+			}
+		);
+
+		luaEnums = luaEnumStream.map(
+			luaEnum -> {
+				final String ns = ArdourLuaScraper.getNamespace(luaEnum.type());
+				final LuaClass parent = ns == null ? null : classMap.get(ns);
+				if (parent != null) {
+					parent.getNestedEnums().add(luaEnum);
+					return luaEnum.withParent(parent);
+				}
+				return luaEnum;
+			}
+		).collect(Collectors.toList());
+		namespaceTree = new NamespaceTree(luaClasses, luaEnums);
+	}
+
+	private LuaModel(List<LuaClass> luaClasses, List<LuaEnum> luaEnums) {
+		this.luaClasses = luaClasses;
+		this.luaEnums = luaEnums;
+		luaClasses.forEach(luaClass -> classMap.put(luaClass.getName(), luaClass));
+		namespaceTree = new NamespaceTree(luaClasses, luaEnums);
+	}
+
+	/**
+	 * @return the classes and enums with the given names, which are already linked to their
+	 * parents. The names should include the parents of the classes and enums.
+	 */
+	public LuaModel subset(Set<String> names) {
+		return new LuaModel(
+			luaClasses.stream()
+				.filter(luaClass -> names.contains(luaClass.getName()))
+				.collect(Collectors.toList()),
+			luaEnums.stream()
+				.filter(luaEnum -> names.contains(luaEnum.type()))
+				.collect(Collectors.toList())
+		);
+	}
+
+	/**
+	 * Merges the sources into one model. Classes and enums keep the position of their first
+	 * definition. The conflict policy applies only across sources. A class defined twice by
+	 * the same source is always an error. An enum listed twice by the same source, e.g. as
+	 * {@code X} and {@code X<long>*}, which have the same type, gets the values of both.
+	 */
+	public static LuaModel merge(List<SourceModel> sources, ConflictPolicy conflictPolicy) {
+		final Map<String, LuaClass> luaClasses = new LinkedHashMap<>();
+		final Map<String, LuaEnum> luaEnums = new LinkedHashMap<>();
+		final Map<String, String> classSources = new HashMap<>();
+		final Map<String, String> enumSources = new HashMap<>();
+		sources.forEach(
+			source -> {
+				final Set<String> classNames = new HashSet<>();
+				source.luaClasses().forEach(
+					luaClass -> {
+						final String name = luaClass.getName();
+						if (!classNames.add(name)) {
+							throw new IllegalStateException(
+								name + " is defined twice in " + source.location()
+							);
+						}
+						luaClasses.merge(
+							name,
+							luaClass,
+							(prev, next) -> merge(
+								name, prev, next, LuaClass::union, conflictPolicy,
+								classSources.get(name), source.location()
+							)
+						);
+						classSources.putIfAbsent(name, source.location());
+					}
+				);
+				final Set<String> enumTypes = new HashSet<>();
+				source.luaEnums().forEach(
+					luaEnum -> {
+						final String type = luaEnum.type();
+						luaEnums.merge(
+							type,
+							luaEnum,
+							(prev, next) -> enumTypes.contains(type) ?
+								prev.union(next) :
+								merge(
+									type, prev, next, LuaEnum::union, conflictPolicy,
+									enumSources.get(type), source.location()
+								)
+						);
+						enumTypes.add(type);
+						enumSources.putIfAbsent(type, source.location());
+					}
+				);
+			}
+		);
+		return new LuaModel(luaEnums.values().stream(), luaClasses.values().stream());
+	}
+
+	/**
+	 * @param prevLocation the source of the previous definition.
+	 */
+	private static <T> T merge(
+		String name,
+		T prev,
+		T next,
+		BinaryOperator<T> union,
+		ConflictPolicy conflictPolicy,
+		String prevLocation,
+		String location
+	) {
+		switch (conflictPolicy) {
+			case OVERRIDE: return next;
+			case UNION: return union.apply(prev, next);
+			default: throw new IllegalStateException(
+				name + " is defined in both " + prevLocation + " and " + location
+			);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The global namespace tables, which hold the classes, enums and enum values of a model,
+ * as a trie of dotted names. Children are sorted by name.
+ */
+public class NamespaceTree {
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static class Node {
+		final String name;
+		final String fullName;
+		/**
+		 * Whether the namespace is needed in the compact enum encoding, i.e. it is not only
+		 * implied by the values of an enum, which becomes a table of its own.
+		 */
+		boolean compact;
+		Map<String, Node> childMap = new HashMap<>();
+		Node[] children = NO_CHILDREN;
+
+		Node(String name, String fullName) {
+			this.name = name;
+			this.fullName = fullName;
+		}
+	}
+
+	private final Node root = new Node("", "");
+	private final Set<String> names = new HashSet<>();
+	private int depth;
+
+	public NamespaceTree(List<LuaClass> luaClasses, List<LuaEnum> luaEnums) {
+		luaEnums.forEach(
+			luaEnum -> {
+				add(ArdourLuaScraper.getNamespace(luaEnum.type()), true);
+				luaEnum.enumVars().forEach(
+					var -> add(ArdourLuaScraper.getNamespace(var), !luaEnum.hasQualifiedValues())
+				);
+			}
+		);
+		luaClasses.stream().filter(luaClass -> luaClass.getParent() == null).forEach(
+			luaClass -> add(
+				luaClass.isNamespace() ?
+					luaClass.getName() : ArdourLuaScraper.getNamespace(luaClass.getName()),
+				true
+			)
+		);
+		freeze(root);
+	}
+
+	private void add(String name, boolean compact) {
+		if (name == null) return;
+		Node node = root;
+		int level = 0;
+		for (int start = 0, end; start <= name.length(); start = end + 1) {
+			end = name.indexOf('.', start);
+			if (end == -1) end = name.length();
+			final int prefixEnd = end;
+			node = node.childMap.computeIfAbsent(
+				name.substring(start, end),
+				key -> {
+					names.add(name.substring(0, prefixEnd));
+					return new Node(key, name.substring(0, prefixEnd));
+				}
+			);
+			node.compact |= compact;
+			level++;
+		}
+		depth = Math.max(depth, level);
+	}
+
+	private static void freeze(Node node) {
+		if (!node.childMap.isEmpty()) {
+			node.children = node.childMap.values().toArray(NO_CHILDREN);
+			Arrays.sort(node.children, Comparator.comparing(child -> child.name));
+			for (Node child : node.children) {
+				freeze(child);
+			}
+		}
+		node.childMap = null;
+	}
+
+	/**
+	 * @return whether a global table is appended for the namespace in the table enum encoding.
+	 */
+	public boolean contains(String name) {
+		return names.contains(name);
+	}
+
+	/**
+	 * Appends a global table for every top-level namespace, which declares its nested
+	 * namespaces as fields. The tree is walked iteratively, reusing the indent.
+	 *
+	 * @param compact whether only the namespaces needed in the compact enum encoding are
+	 * appended.
+	 */
+	public void append(boolean compact, StringBuilder buf, SymbolIndex symbolIndex) {
+		final StringBuilder indent = new StringBuilder(depth);
+		for (int i = 0; i < depth; i++) {
+			indent.append('\t');
+		}
+		final Node[] stack = new Node[depth + 1];
+		// The index of the next child, and of the last appended one, of each node on the stack.
+		final int[] next = new int[depth + 1];
+		final int[] last = new int[depth + 1];
+		stack[0] = root;
+		last[0] = getLastChild(root, compact);
+		int level = 0;
+		while (level >= 0) {
+			final Node node = stack[level];
+			if (next[level] > last[level]) {
+				// All the children are appended, so the table of the node is closed.
+				level--;
+				if (level == 0) {
+					buf.append("}\n");
+				} else if (level > 0) {
+					buf.append(indent, 0, level).append(next[level] > last[level] ? "}\n" : "},\n");
+				}
+				continue;
+			}
+			final Node child = node.children[next[level]++];
+			if (compact && !child.compact) continue;
+			symbolIndex.add(child.fullName, SymbolIndex.Kind.NAMESPACE, child.fullName, buf.length());
+			buf.append(indent, 0, level).append("---@class ").append(child.fullName).append('\n');
+			buf.append(indent, 0, level).append(child.name).append(" = {\n");
+			level++;
+			stack[level] = child;
+			next[level] = 0;
+			last[level] = getLastChild(child, compact);
+		}
+	}
+
+	private static int getLastChild(Node node, boolean compact) {
+		int idx = node.children.length - 1;
+		if (compact) {
+			while (idx >= 0 && !node.children[idx].compact) idx--;
+		}
+		return idx;
+	}
+}
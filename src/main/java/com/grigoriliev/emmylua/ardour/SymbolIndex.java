@@ -0,0 +1,198 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the symbols declared in the generated annotations, collected during emission.
+ * Symbol offsets are recorded as character offsets in the emission buffer and resolved
+ * to line numbers and UTF-8 byte offsets of the written file while it is written.
+ */
+public class SymbolIndex {
+	public enum Kind {
+		NAMESPACE("namespace"),
+		CLASS("class"),
+		ENUM("enum"),
+		ENUM_VALUE("enum-value"),
+		CONSTANT("constant"),
+		FIELD("field"),
+		FUNCTION("function"),
+		CONSTRUCTOR("constructor");
+
+		private final String jsonName;
+		public String getJsonName() { return jsonName; }
+
+		Kind(String jsonName) {
+			this.jsonName = jsonName;
+		}
+	}
+
+	/**
+	 * A line number and a UTF-8 byte offset in the written annotation file.
+	 */
+	public record Location(int line, long byteOffset) { }
+
+	/**
+	 * @param offset the character offset of the declaration in the emission buffer.
+	 * @param location the location in the written file, {@code null} until resolved.
+	 */
+	public record Symbol(
+		String name, Kind kind, String signature, String baseClass, int offset, Location location
+	) {
+		public Symbol withLocation(Location location) {
+			return new Symbol(name(), kind(), signature(), baseClass(), offset(), location);
+		}
+	}
+
+	/**
+	 * Tracks the line and the UTF-8 byte offset while the written text is scanned in order.
+	 */
+	public static class Locator {
+		private int line = 1;
+		private long byteOffset;
+
+		public Location getLocation() { return new Location(line, byteOffset); }
+
+		public void advance(CharSequence text) {
+			advance(text, 0, text.length());
+		}
+
+		public void advance(CharSequence text, int from, int to) {
+			for (int i = from; i < to; i++) {
+				final char c = text.charAt(i);
+				if (c < 0x80) {
+					if (c == '\n') line++;
+					byteOffset++;
+				} else if (c < 0x800) {
+					byteOffset += 2;
+				} else if (Character.isHighSurrogate(c)) {
+					byteOffset += 4;
+				} else if (!Character.isLowSurrogate(c)) {
+					byteOffset += 3;
+				}
+			}
+		}
+	}
+
+	private final List<Symbol> symbols = new ArrayList<>();
+	public List<Symbol> getSymbols() { return symbols; }
+
+	public void add(String name, Kind kind, String signature, String baseClass, int offset) {
+		symbols.add(new Symbol(name, kind, signature, baseClass, offset, null));
+	}
+
+	public void add(String name, Kind kind, String signature, int offset) {
+		add(name, kind, signature, "", offset);
+	}
+
+	/**
+	 * Appends the symbols of an index that was built for a separately emitted buffer,
+	 * which has been appended at {@code baseOffset}.
+	 */
+	public void addAll(SymbolIndex index, int baseOffset) {
+		index.symbols.forEach(
+			symbol -> symbols.add(
+				new Symbol(
+					symbol.name(), symbol.kind(), symbol.signature(),
+					symbol.baseClass(), baseOffset + symbol.offset(), symbol.location()
+				)
+			)
+		);
+	}
+
+	/**
+	 * Resolves the locations of the symbols, whose offsets are relative to the start of
+	 * {@code text}, and advances the locator past the text. Symbols are recorded in emission
+	 * order, so the text is scanned only once.
+	 */
+	public void resolve(CharSequence text, Locator locator) {
+		int pos = 0;
+		for (int i = 0; i < symbols.size(); i++) {
+			final Symbol symbol = symbols.get(i);
+			if (symbol.offset() < pos) {
+				throw new IllegalStateException("Symbols are not in emission order: " + symbol.name());
+			}
+			locator.advance(text, pos, symbol.offset());
+			pos = symbol.offset();
+			symbols.set(i, symbol.withLocation(locator.getLocation()));
+		}
+		locator.advance(text, pos, text.length());
+	}
+
+	/**
+	 * Writes the resolved index as JSON, keyed by fully qualified name. Every key maps to
+	 * an array, since overloaded functions share the same name.
+	 *
+	 * @param fileName the name of the annotation file the index refers to.
+	 */
+	public void writeJson(Path path, String fileName) throws IOException {
+		Files.write(path, toJson(fileName).getBytes(StandardCharsets.UTF_8));
+	}
+
+	public String toJson(String fileName) {
+		final Map<String, List<String>> entries = new LinkedHashMap<>();
+		symbols.forEach(
+			symbol -> {
+				if (symbol.location() == null) {
+					throw new IllegalStateException("Unresolved symbol: " + symbol.name());
+				}
+				final StringBuilder entry = new StringBuilder();
+				entry.append("{\"kind\":");
+				appendJsonString(symbol.kind().getJsonName(), entry);
+				entry.append(",\"signature\":");
+				appendJsonString(symbol.signature(), entry);
+				if (!symbol.baseClass().isEmpty()) {
+					entry.append(",\"base\":");
+					appendJsonString(symbol.baseClass(), entry);
+				}
+				entry.append(",\"line\":").append(symbol.location().line())
+					.append(",\"offset\":").append(symbol.location().byteOffset())
+					.append('}');
+				entries.computeIfAbsent(symbol.name(), key -> new ArrayList<>()).add(entry.toString());
+			}
+		);
+
+		final StringBuilder buf = new StringBuilder();
+		buf.append("{\"file\":");
+		appendJsonString(fileName, buf);
+		buf.append(",\"symbols\":{");
+		final boolean[] first = { true };
+		entries.forEach(
+			(name, list) -> {
+				buf.append(first[0] ? "\n" : ",\n");
+				first[0] = false;
+				appendJsonString(name, buf);
+				buf.append(":[").append(String.join(",", list)).append(']');
+			}
+		);
+		buf.append("\n}}\n");
+		return buf.toString();
+	}
+
+	private static void appendJsonString(String str, StringBuilder buf) {
+		buf.append('"');
+		for (int i = 0; i < str.length(); i++) {
+			final char c = str.charAt(i);
+			switch (c) {
+				case '"': buf.append("\\\""); break;
+				case '\\': buf.append("\\\\"); break;
+				case '\n': buf.append("\\n"); break;
+				case '\r': buf.append("\\r"); break;
+				case '\t': buf.append("\\t"); break;
+				default:
+					if (c < 0x20) {
+						buf.append(String.format("\\u%04x", (int) c));
+					} else {
+						buf.append(c);
+					}
+			}
+		}
+		buf.append('"');
+	}
+}
@@ -0,0 +1,115 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reduces a model to the classes and enums reachable from a set of root symbols, so that
+ * a project gets only the annotations of the API it uses.
+ */
+public class TreeShaker {
+	/**
+	 * @param symbols root classes, enums or namespaces, e.g. {@code Session} or
+	 * {@code ARDOUR.LuaAPI}. A namespace, which isn't a type itself, e.g. {@code ARDOUR},
+	 * stands for all the types in it.
+	 * @param scriptDirs directories, whose Lua scripts are scanned for the used symbols.
+	 */
+	public record Roots(List<String> symbols, List<Path> scriptDirs) {
+		public boolean isEmpty() {
+			return symbols().isEmpty() && scriptDirs().isEmpty();
+		}
+	}
+
+	private static final Pattern IDENTIFIER_PATTERN = Pattern.compile(
+		"[A-Za-z_][A-Za-z0-9_]*(?:[.:][A-Za-z_][A-Za-z0-9_]*)*"
+	);
+
+	public static LuaModel shake(LuaModel model, Roots roots) throws IOException {
+		final TypeGraph typeGraph = new TypeGraph(model);
+		final Set<String> rootTypes = new LinkedHashSet<>();
+		roots.symbols().forEach(
+			symbol -> {
+				final List<String> namespaceTypes = typeGraph.getTypesIn(symbol);
+				if (typeGraph.contains(symbol)) {
+					rootTypes.add(symbol);
+				} else if (!namespaceTypes.isEmpty()) {
+					rootTypes.addAll(namespaceTypes);
+				} else {
+					System.err.println("Unknown root symbol: " + symbol);
+				}
+			}
+		);
+		for (Path dir : roots.scriptDirs()) {
+			rootTypes.addAll(scanScripts(dir, model, typeGraph));
+		}
+		return model.subset(typeGraph.getReachable(rootTypes));
+	}
+
+	/**
+	 * @return the classes and enums, which are used by the Lua scripts in the directory.
+	 * For a dotted name, e.g. {@code ARDOUR.LuaAPI.new_luaproc}, the longest prefix naming
+	 * a type is used; an enum value resolves to its enum.
+	 */
+	public static Set<String> scanScripts(
+		Path dir, LuaModel model, TypeGraph typeGraph
+	) throws IOException {
+		final Map<String, String> enumTypes = new HashMap<>();
+		model.getLuaEnums().forEach(
+			luaEnum -> luaEnum.enumVars().forEach(var -> enumTypes.put(var, luaEnum.type()))
+		);
+
+		final Set<String> identifiers;
+		try (Stream<Path> paths = Files.walk(dir)) {
+			identifiers = paths
+				.filter(path -> path.toString().endsWith(".lua") && Files.isRegularFile(path))
+				.flatMap(
+					path -> {
+						try {
+							final Matcher matcher = IDENTIFIER_PATTERN.matcher(
+								Files.readString(path, StandardCharsets.UTF_8)
+							);
+							return matcher.results().map(result -> result.group().replace(':', '.'));
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				).collect(Collectors.toSet());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		final Set<String> result = new LinkedHashSet<>();
+		identifiers.forEach(
+			identifier -> {
+				final String enumType = enumTypes.get(identifier);
+				if (enumType != null) {
+					result.add(enumType);
+					return;
+				}
+				for (
+					String name = identifier;
+					name != null;
+					name = ArdourLuaScraper.getNamespace(name)
+				) {
+					if (typeGraph.contains(name)) {
+						result.add(name);
+						return;
+					}
+				}
+			}
+		);
+		return result;
+	}
+}
@@ -0,0 +1,276 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Index of the types declared by the model and the references between them, as used in
+ * {@code @field}, {@code @param}, {@code @return} and base class annotations. Every declared
+ * class and enum is a node; references to types which are neither declared nor built into
+ * Lua are kept as unresolved.
+ */
+public class TypeGraph {
+	public static final Set<String> LUA_TYPES = Set.of(
+		"nil", "any", "boolean", "string", "number", "unknown", "userdata", "function", "table", "..."
+	);
+
+	public enum Validation {
+		/** The model is not validated. */
+		OFF,
+		/** Problems are reported. */
+		WARN,
+		/** Problems are reported, and errors fail the generation. */
+		FAIL
+	}
+
+	public enum Severity { ERROR, WARNING }
+
+	public record Problem(Severity severity, String message) {
+		@Override public String toString() {
+			return severity + ": " + message;
+		}
+	}
+
+	/**
+	 * A reference to a type, which is neither declared by the model nor built into Lua.
+	 *
+	 * @param from the annotated symbol, e.g. {@code ARDOUR.Region:position}.
+	 * @param role how the type is used, e.g. {@code @param 1}.
+	 */
+	public record UnresolvedReference(String from, String role, String type) { }
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final String[] names;
+
+	/** The ids of the types referenced by each node, including its base class. */
+	private final int[][] references;
+
+	/** The id of the base class of each node, -1 if it has none or it is unresolved. */
+	private final int[] baseClasses;
+
+	/** The id of the class, which declares each node, -1 if it is a top-level one. */
+	private final int[] parents;
+
+	private final NamespaceTree namespaceTree;
+
+	private final List<UnresolvedReference> unresolvedReferences = new ArrayList<>();
+	public List<UnresolvedReference> getUnresolvedReferences() { return unresolvedReferences; }
+
+	public TypeGraph(LuaModel model) {
+		namespaceTree = model.getNamespaceTree();
+		final List<String> nodes = new ArrayList<>();
+		model.getLuaClasses().forEach(luaClass -> addNode(luaClass.getName(), nodes));
+		model.getLuaEnums().forEach(luaEnum -> addNode(luaEnum.type(), nodes));
+		names = nodes.toArray(new String[0]);
+		references = new int[names.length][];
+		baseClasses = new int[names.length];
+		Arrays.fill(baseClasses, -1);
+		parents = new int[names.length];
+		Arrays.fill(parents, -1);
+		Arrays.fill(references, new int[0]);
+
+		final List<Integer> refs = new ArrayList<>();
+		model.getLuaClasses().forEach(
+			luaClass -> {
+				final int id = ids.get(luaClass.getName());
+				if (luaClass.getParent() != null) {
+					parents[id] = ids.get(luaClass.getParent().getName());
+				}
+				refs.clear();
+				if (!luaClass.getBaseClassName().isEmpty()) {
+					baseClasses[id] = resolve(
+						luaClass.getName(), "base class", luaClass.getBaseClassName(), refs
+					);
+				}
+				luaClass.getLuaFields().forEach(
+					field -> resolve(
+						luaClass.getName() + "." + field.name(),
+						"@field",
+						ArdourLuaScraper.toLuaType(field.type()),
+						refs
+					)
+				);
+				luaClass.getLuaFunctions().forEach(
+					function -> {
+						final String functionName =
+							ArdourLuaScraper.getFunctionName(luaClass, function);
+						for (int i = 0; i < function.arguments().size(); i++) {
+							resolve(
+								functionName,
+								"@param " + (i + 1),
+								ArdourLuaScraper.toLuaType(function.arguments().get(i).type()),
+								refs
+							);
+						}
+						final String returnType =
+							ArdourLuaScraper.getLuaReturnType(luaClass, function);
+						if (returnType != null) {
+							resolve(functionName, "@return", returnType, refs);
+						}
+					}
+				);
+				references[id] = refs.stream().mapToInt(Integer::intValue).distinct().toArray();
+			}
+		);
+		model.getLuaEnums().stream().filter(luaEnum -> luaEnum.parent() != null).forEach(
+			luaEnum -> parents[ids.get(luaEnum.type())] = ids.get(luaEnum.parent().getName())
+		);
+	}
+
+	private void addNode(String name, List<String> nodes) {
+		if (ids.putIfAbsent(name, nodes.size()) == null) {
+			nodes.add(name);
+		}
+	}
+
+	/**
+	 * @return the id of the type, -1 if it is built into Lua or unresolved.
+	 */
+	private int resolve(String from, String role, String type, List<Integer> refs) {
+		final Integer id = ids.get(type);
+		if (id != null) {
+			refs.add(id);
+			return id;
+		}
+		if (!LUA_TYPES.contains(type)) {
+			unresolvedReferences.add(new UnresolvedReference(from, role, type));
+		}
+		return -1;
+	}
+
+	public boolean contains(String type) {
+		return ids.containsKey(type);
+	}
+
+	/**
+	 * @return the types in the namespace, including those of nested namespaces, e.g.
+	 * {@code ARDOUR.Session} and {@code ARDOUR.DSP.Biquad} for {@code ARDOUR}.
+	 */
+	public List<String> getTypesIn(String namespace) {
+		final String prefix = namespace + ".";
+		return Arrays.stream(names).filter(name -> name.startsWith(prefix)).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the types reachable from the roots through base classes, fields, parameters
+	 * and return types, including the classes which declare them. Each node and reference
+	 * is visited once.
+	 */
+	public Set<String> getReachable(Collection<String> roots) {
+		final boolean[] reached = new boolean[names.length];
+		final int[] queue = new int[names.length];
+		int tail = 0;
+		for (String root : roots) {
+			final Integer id = ids.get(root);
+			if (id != null && !reached[id]) {
+				reached[id] = true;
+				queue[tail++] = id;
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			final int id = queue[head];
+			for (int ref : references[id]) {
+				if (!reached[ref]) {
+					reached[ref] = true;
+					queue[tail++] = ref;
+				}
+			}
+			final int parent = parents[id];
+			if (parent != -1 && !reached[parent]) {
+				reached[parent] = true;
+				queue[tail++] = parent;
+			}
+		}
+		final Set<String> result = new HashSet<>();
+		for (int i = 0; i < tail; i++) {
+			result.add(names[queue[i]]);
+		}
+		return result;
+	}
+
+	/**
+	 * Reports unresolved references and inheritance cycles as errors, and orphan namespaces
+	 * as warnings. Overloads may repeat the same problem, which is reported once.
+	 */
+	public List<Problem> validate() {
+		final Set<Problem> problems = new LinkedHashSet<>();
+		unresolvedReferences.forEach(
+			ref -> problems.add(
+				new Problem(
+					Severity.ERROR,
+					"Unresolved type " + ref.type() + " in " + ref.role() + " of " + ref.from()
+				)
+			)
+		);
+		findInheritanceCycles().forEach(
+			cycle -> problems.add(
+				new Problem(Severity.ERROR, "Inheritance cycle: " + String.join(" : ", cycle))
+			)
+		);
+		findOrphanNamespaces().forEach(
+			ns -> problems.add(
+				new Problem(Severity.WARNING, "Namespace " + ns + " is not declared")
+			)
+		);
+		return new ArrayList<>(problems);
+	}
+
+	/**
+	 * Every class has at most one base class, so each node is visited once by following
+	 * the base class chain until it reaches a visited node.
+	 */
+	private List<List<String>> findInheritanceCycles() {
+		final List<List<String>> cycles = new ArrayList<>();
+		// 0: not visited, 1: on the current chain, 2: done.
+		final byte[] state = new byte[names.length];
+		final List<Integer> chain = new ArrayList<>();
+		for (int start = 0; start < names.length; start++) {
+			chain.clear();
+			int id = start;
+			while (id != -1 && state[id] == 0) {
+				state[id] = 1;
+				chain.add(id);
+				id = baseClasses[id];
+			}
+			if (id != -1 && state[id] == 1) {
+				final List<String> cycle = chain.subList(chain.indexOf(id), chain.size()).stream()
+					.map(idx -> names[idx]).collect(Collectors.toList());
+				cycle.add(names[id]);
+				cycles.add(cycle);
+			}
+			chain.forEach(idx -> state[idx] = 2);
+		}
+		return cycles;
+	}
+
+	/**
+	 * @return the namespaces of unresolved types, which are neither declared types nor
+	 * emitted as global tables, e.g. {@code Vamp} for {@code Vamp.Plugin} if there is no
+	 * {@code Vamp} table. The namespaces of declared types are always emitted, so only
+	 * unresolved types can have orphan namespaces. The outermost missing namespace is
+	 * reported, e.g. {@code ARDOUR.Vamp} for {@code ARDOUR.Vamp.Plugin}.
+	 */
+	private Set<String> findOrphanNamespaces() {
+		final Set<String> orphans = new TreeSet<>();
+		for (UnresolvedReference ref : unresolvedReferences) {
+			final String type = ref.type();
+			for (int idx = type.indexOf('.'); idx != -1; idx = type.indexOf('.', idx + 1)) {
+				final String ns = type.substring(0, idx);
+				if (!ids.containsKey(ns) && !namespaceTree.contains(ns)) {
+					orphans.add(ns);
+					break;
+				}
+			}
+		}
+		return orphans;
+	}
+}
@@ -0,0 +1,114 @@
+#!/usr/bin/env python3
+"""Generates the synthetic class reference snapshot of the performance gate.
+
+The page mimics the #luaref format of the Ardour Lua class reference: random classes
+in the usual namespaces with methods, constructors, data members, docs and enums. It
+validates without warnings, as base classes only refer to earlier classes and every
+referenced type is declared.
+
+Usage: generate_snapshot.py [classes] [seed] [output.zip]
+
+The bundled snapshot was generated with the defaults, 3000 classes and seed 7. After
+changing the snapshot, record a new baseline with mvn verify -Dperf.gate -Dperf.record=true.
+"""
+import random
+import sys
+import zipfile
+
+classes = int(sys.argv[1]) if len(sys.argv) > 1 else 3000
+random.seed(int(sys.argv[2]) if len(sys.argv) > 2 else 7)
+output = sys.argv[3] if len(sys.argv) > 3 else 'synthetic_class_reference.zip'
+
+out = ['<html><head><meta charset="utf-8"></head><body><div id="luaref">']
+out.append('<h2 id="h_classes">Class Documentation</h2>')
+names = []
+for i in range(classes):
+    ns = random.choice(['ARDOUR', 'ArdourUI', 'PBD', 'Evoral', 'ARDOUR:DSP', 'C', 'LuaSignal'])
+    names.append(f'{ns}:Cls{i}')
+names += ['ARDOUR:Session', 'ArdourUI:Editor', 'ARDOUR:DSP', 'ARDOUR:LuaAPI']
+
+
+def cls(n, kind):
+    o = [f'<h3 id="{n}" class="cls {kind}">&nbsp;{n}</h3>']
+    if kind != 'opaque' and random.random() < 0.5:
+        b = random.choice(names[:max(1, names.index(n))])
+        o.append(f'<p class="classinfo">is-a: <a class="" href="#{b}">{b}</a></p>')
+    if random.random() < 0.6:
+        o.append(f'<div class="classdox"><p>Doc for {n} ü.</p><p>Second para.</p></div>')
+    if kind == 'opaque':
+        return o
+    o.append('<table class="classmembers">')
+    o.append('<tr><th colspan="3">Methods</th></tr>')
+    fnames = ['get', 'set', 'add', 'remove', 'name', 'position']
+    for j in range(random.randint(0, 8)):
+        fn = random.choice(fnames)
+        ctor = kind != 'freeclass' and random.random() < 0.1
+        if ctor:
+            d = '<td class="def"><abbr title="Constructor">&#8450;</abbr></td>'
+        else:
+            rt = random.choice([
+                'void', 'bool', 'int', 'std::string',
+                '<a class="" href="#%s">x</a>' % random.choice(names), 'LuaTable'
+            ])
+            d = f'<td class="def"><span>{rt}</span></td>' if not rt.startswith('<a') else \
+                f'<td class="def">{rt}</td>'
+        args = []
+        for k in range(random.randint(0, 3)):
+            t = random.choice([
+                '<span>double</span>', '<span>bool</span>',
+                '<a class="" href="#%s">y</a>' % random.choice(names), '<span>unsigned int</span>'
+            ])
+            args.append(t)
+        o.append(
+            f'<tr>{d}<td class="decl"><span class="functionname"><abbr title="x">{fn}</abbr>'
+            f'</span><span class="functionargs"> ({", ".join(args)})</span></td>'
+            f'<td class="fill"></td></tr>'
+        )
+        if random.random() < 0.6:
+            dl = ''
+            if args and random.random() < 0.5:
+                dl = '<dl><dt class="param-name-index-0">end</dt>' \
+                    '<dd class="param-descr-index-0">first param doc</dd></dl>'
+            rd = ''
+            if random.random() < 0.3:
+                rd = '<p class="result-discussion"><span class="para-returns">' \
+                    '<span class="word-returns">Returns</span> the value</span></p>'
+            o.append(
+                f'<tr><td class="doc" colspan="3"><div class="dox"><p>Function doc {j}</p>'
+                f'{dl}{rd}</div></td></tr>'
+            )
+    if kind != 'freeclass' and random.random() < 0.5:
+        o.append('<tr><th colspan="3">Data Members</th></tr>')
+        for j in range(random.randint(1, 3)):
+            o.append(
+                f'<tr><td class="def"><span>float</span></td><td class="decl">'
+                f'<span class="membername">m{j}</span></td><td class="fill"></td></tr>'
+            )
+            o.append(
+                '<tr><td class="doc" colspan="3"><div class="dox"><p>Member doc</p></div></td></tr>'
+            )
+    o.append('</table>')
+    return o
+
+
+for n in names:
+    kind = 'freeclass' if n in ('ARDOUR:DSP', 'ARDOUR:LuaAPI') else \
+        random.choice(['class', 'pointerclass', 'opaque', 'array', 'freeclass'])
+    out += cls(n, kind)
+out.append('<h2 id="h_enum">Enum/Constants</h2>')
+for i in range(classes // 3):
+    t = random.choice([
+        'ARDOUR.Enum%d' % i, 'ARDOUR.DSP.E%d' % i, names[i].replace(':', '.') + '.Kind',
+        'Evoral.E%d' % i
+    ])
+    out.append(f'<h3 class="enum" id="{t}">{t}</h3><ul class="enum">')
+    for v in range(random.randint(1, 5)):
+        out.append(f'<li class="const">{t}.V{v},</li>')
+    out.append('</ul>')
+out.append('<h2 id="h_end">Other</h2></div></body></html>')
+
+# A fixed timestamp keeps the archive reproducible.
+entry = zipfile.ZipInfo('class_reference.html', (2022, 5, 1, 0, 0, 0))
+entry.compress_type = zipfile.ZIP_DEFLATED
+with zipfile.ZipFile(output, 'w', zipfile.ZIP_DEFLATED, compresslevel=9) as archive:
+    archive.writestr(entry, ('\n'.join(out) + '\n').encode('utf-8'))
@@ -0,0 +1,60 @@
+package com.grigoriliev.emmylua.ardour;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+class ArdourLuaScraperTest {
+	static Document parseFixture() throws IOException {
+		return parseFixture("/luaref.html");
+	}
+
+	static Document parseFixture(String resource) throws IOException {
+		try (InputStream in = ArdourLuaScraperTest.class.getResourceAsStream(resource)) {
+			return Jsoup.parse(in, null, "");
+		}
+	}
+
+	@Test
+	void parallelExportEqualsSerialExport() throws IOException {
+		final SymbolIndex serialIndex = new SymbolIndex();
+		final String serial = ArdourLuaScraper.exportEmmyLuaAnnotations(
+			parseFixture(), ExportOptions.DEFAULT.withParallel(false), serialIndex
+		);
+		final SymbolIndex parallelIndex = new SymbolIndex();
+		final String parallel = ArdourLuaScraper.exportEmmyLuaAnnotations(
+			parseFixture(), ExportOptions.DEFAULT.withParallel(true), parallelIndex
+		);
+
+		assertEquals(serial, parallel);
+		serialIndex.resolve(serial, new SymbolIndex.Locator());
+		parallelIndex.resolve(parallel, new SymbolIndex.Locator());
+		assertEquals(serialIndex.toJson("ardour.lua"), parallelIndex.toJson("ardour.lua"));
+	}
+
+	@Test
+	void mergedOverloadsKeepTheirDocs() throws IOException {
+		final String lua = ArdourLuaScraper.exportEmmyLuaAnnotations(
+			parseFixture(), ExportOptions.DEFAULT, new SymbolIndex()
+		);
+
+		assertTrue(
+			lua.contains(
+				"---Creates a region.\n" +
+					"---\n" +
+					"---Overload `fun(name: string, end_: boolean): ARDOUR.Region`:\n" +
+					"---Creates a region, which may be hidden.\n" +
+					"--- * `name` the name\n" +
+					"--- * `end_` flag\n" +
+					"--- * returns the new region\n"
+			),
+			lua
+		);
+	}
+}
@@ -0,0 +1,93 @@
+package com.grigoriliev.emmylua.ardour;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClassReferenceSourceTest {
+	private static final String PAGE = "<html><body><div id=\"luaref\">ü</div></body></html>";
+
+	private static final Map<String, String> FILES = Map.of(
+		"README.txt", "Not a page",
+		"class_reference/index.html", PAGE
+	);
+
+	private static Path writeZip(Path path) throws IOException {
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(path))) {
+			for (Map.Entry<String, String> file : FILES.entrySet()) {
+				zip.putNextEntry(new ZipEntry(file.getKey()));
+				zip.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+				zip.closeEntry();
+			}
+		}
+		return path;
+	}
+
+	private static Path writeTarGz(Path path) throws IOException {
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+			for (Map.Entry<String, String> file : FILES.entrySet()) {
+				final byte[] data = file.getValue().getBytes(StandardCharsets.UTF_8);
+				out.write(getTarHeader(file.getKey(), data.length));
+				out.write(data);
+				out.write(new byte[(512 - data.length % 512) % 512]);
+			}
+			out.write(new byte[1024]);
+		}
+		return path;
+	}
+
+	private static byte[] getTarHeader(String name, int size) {
+		final byte[] header = new byte[512];
+		putTarString(header, 0, name);
+		putTarString(header, 100, "0000644");
+		putTarString(header, 124, String.format("%011o", size));
+		putTarString(header, 136, String.format("%011o", 0));
+		header[156] = '0';
+		putTarString(header, 257, "ustar");
+		putTarString(header, 263, "00");
+		putTarString(header, 148, "        ");
+		int checksum = 0;
+		for (byte b : header) checksum += b & 0xff;
+		putTarString(header, 148, String.format("%06o\0 ", checksum));
+		return header;
+	}
+
+	private static void putTarString(byte[] header, int offset, String value) {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+
+	private static String fetch(String location) throws IOException {
+		return new String(ClassReferenceSource.fetch(location).body(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void readsPageFromZip(@TempDir Path dir) throws IOException {
+		final String archive = writeZip(dir.resolve("luaref.zip")).toString();
+
+		assertEquals(PAGE, fetch(archive + "!class_reference/index.html"));
+		assertEquals(PAGE, fetch(archive));
+		assertThrows(IOException.class, () -> fetch(archive + "!missing.html"));
+	}
+
+	@Test
+	void readsPageFromTarGz(@TempDir Path dir) throws IOException {
+		final String archive = writeTarGz(dir.resolve("luaref.tar.gz")).toString();
+
+		assertEquals(PAGE, fetch(archive + "!class_reference/index.html"));
+		assertEquals(PAGE, fetch(archive));
+		assertThrows(IOException.class, () -> fetch(archive + "!missing.html"));
+	}
+}
@@ -0,0 +1,113 @@
+package com.grigoriliev.emmylua.ardour;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+class LuaModelTest {
+	@Test
+	void overrideKeepsTheLaterDefinition() {
+		final LuaModel model = LuaModel.merge(
+			List.of(source("a", classSection("active")), source("b", classSection("name"))),
+			LuaModel.ConflictPolicy.OVERRIDE
+		);
+
+		assertEquals(List.of("name"), functionNames(model));
+	}
+
+	@Test
+	void unionAddsTheLaterMembers() {
+		final LuaModel model = LuaModel.merge(
+			List.of(source("a", classSection("active")), source("b", classSection("name"))),
+			LuaModel.ConflictPolicy.UNION
+		);
+
+		assertEquals(List.of("active", "name"), functionNames(model));
+	}
+
+	@Test
+	void errorRejectsRepeatedDefinitions() {
+		final IllegalStateException e = assertThrows(
+			IllegalStateException.class,
+			() -> LuaModel.merge(
+				List.of(source("a", classSection("active")), source("b", classSection("name"))),
+				LuaModel.ConflictPolicy.ERROR
+			)
+		);
+
+		assertEquals("ARDOUR.Route is defined in both a and b", e.getMessage());
+	}
+
+	@Test
+	void classDefinedTwiceInOneSourceIsRejected() {
+		final LuaModel.SourceModel twice =
+			source("a", classSection("active") + classSection("name"));
+		for (List<LuaModel.SourceModel> sources : List.of(
+			List.of(twice), List.of(source("b", ""), twice)
+		)) {
+			final IllegalStateException e = assertThrows(
+				IllegalStateException.class,
+				() -> LuaModel.merge(sources, LuaModel.ConflictPolicy.UNION)
+			);
+			assertEquals("ARDOUR.Route is defined twice in a", e.getMessage());
+		}
+	}
+
+	@Test
+	void enumListedTwiceInOneSourceGetsBothValues() {
+		final LuaModel.SourceModel twice = source(
+			"a", "<h2 id=\"h_enum\">Enum/Constants</h2>"
+				+ enumSection("ARDOUR.Kind", "Audio") + enumSection("ARDOUR.Kind<long>*", "Midi")
+		);
+		for (List<LuaModel.SourceModel> sources : List.of(
+			List.of(twice), List.of(source("b", ""), twice)
+		)) {
+			final LuaModel model = LuaModel.merge(sources, LuaModel.ConflictPolicy.ERROR);
+			assertEquals(
+				List.of("ARDOUR.Kind.Audio", "ARDOUR.Kind.Midi"),
+				model.getLuaEnums().stream().flatMap(luaEnum -> luaEnum.enumVars().stream())
+					.collect(Collectors.toList())
+			);
+		}
+	}
+
+	private static List<String> functionNames(LuaModel model) {
+		return model.getLuaClasses().stream().flatMap(
+			luaClass -> luaClass.getLuaFunctions().stream().map(LuaFunction::name)
+		).collect(Collectors.toList());
+	}
+
+	private static String classSection(String... functionNames) {
+		return "<h3 id=\"ARDOUR:Route\" class=\"cls class\">&nbsp;ARDOUR:Route</h3>"
+			+ "<table class=\"classmembers\"><tr><th colspan=\"3\">Methods</th></tr>"
+			+ Arrays.stream(functionNames).map(
+				name -> "<tr><td class=\"def\"><span>bool</span></td><td class=\"decl\">"
+					+ "<span class=\"functionname\"><abbr title=\"x\">" + name + "</abbr></span>"
+					+ "<span class=\"functionargs\"> ()</span></td><td class=\"fill\"></td></tr>"
+			).collect(Collectors.joining())
+			+ "</table>";
+	}
+
+	private static String enumSection(String id, String value) {
+		return "<h3 class=\"enum\" id=\"" + id + "\">" + id + "</h3><ul class=\"enum\">"
+			+ "<li class=\"const\">ARDOUR.Kind." + value + ",</li></ul>";
+	}
+
+	private static LuaModel.SourceModel source(String location, String sections) {
+		final List<Element> headings = ArdourLuaScraper.detachSections(
+			Jsoup.parse("<div id=\"luaref\">" + sections + "</div>")
+		);
+		return new LuaModel.SourceModel(
+			location,
+			ArdourLuaScraper.getClassDefStream(headings).collect(Collectors.toList()),
+			ArdourLuaScraper.getEnumStream(headings).collect(Collectors.toList())
+		);
+	}
+}
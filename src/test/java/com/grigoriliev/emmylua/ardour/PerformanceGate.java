@@ -0,0 +1,227 @@
+package com.grigoriliev.emmylua.ardour;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Runs the full generation against an offline class reference snapshot and compares its wall
+ * time, allocated bytes and peak heap with a baseline. Each metric is the best of several runs,
+ * so the first run also warms up the JIT. Every run reads and decompresses the snapshot. The
+ * generation runs serially, because the busy time and allocations of a stage are summed over
+ * its workers, whose number would otherwise depend on the CPUs of the machine.
+ * <p>
+ * Usage: {@code PerformanceGate <snapshot> <baseline.properties> [--record[=true|false]]
+ * [--runs=N] [--tolerance=0.25]}. With {@code --record} the baseline is written instead of
+ * checked. A metric exceeds the budget if it is above the baseline by more than the tolerance
+ * and a small absolute slack.
+ */
+public class PerformanceGate {
+	/** Absolute slack, which keeps short stages from failing on noise. */
+	private static final long TIME_SLACK_MS = 50;
+	private static final long MEMORY_SLACK_MB = 16;
+
+	/**
+	 * @param baseline {@code -1} if the metric is not in the baseline.
+	 */
+	private record Check(String metric, long baseline, long measured, long limit) {
+		boolean isExceeded() {
+			return baseline != -1 && measured > limit;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println(
+				"Usage: PerformanceGate <snapshot> <baseline.properties> [--record[=true|false]]" +
+					" [--runs=N] [--tolerance=0.25]"
+			);
+			System.exit(2);
+		}
+		boolean record = false;
+		int runs = 3;
+		double tolerance = 0.25;
+		for (int i = 2; i < args.length; i++) {
+			if ("--record".equals(args[i])) {
+				record = true;
+			} else if (args[i].startsWith("--record=")) {
+				record = Boolean.parseBoolean(args[i].substring("--record=".length()));
+			} else if (args[i].startsWith("--runs=")) {
+				runs = Integer.parseInt(args[i].substring("--runs=".length()));
+			} else if (args[i].startsWith("--tolerance=")) {
+				tolerance = Double.parseDouble(args[i].substring("--tolerance=".length()));
+			} else {
+				System.out.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		ArdourLuaScraper.loadDocProperties();
+		final com.sun.management.ThreadMXBean threadMXBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		GenerationPipeline.setAllocationProbe(threadMXBean::getCurrentThreadAllocatedBytes);
+		final Map<String, Long> metrics = measure(args[0], runs);
+		final Path baselinePath = Paths.get(args[1]);
+		if (record) {
+			writeBaseline(baselinePath, args[0], metrics);
+			System.out.println("Baseline written to " + baselinePath);
+			return;
+		}
+		if (!Files.exists(baselinePath)) {
+			System.out.println("No baseline " + baselinePath + ", record one with --record");
+			System.exit(1);
+		}
+		final List<Check> checks = check(readBaseline(baselinePath), metrics, tolerance);
+		System.out.println(
+			String.format("%-24s %12s %12s %12s", "Metric", "Baseline", "Measured", "Limit")
+		);
+		checks.forEach(
+			check -> System.out.println(
+				String.format(
+					"%-24s %12s %12d %12s%s",
+					check.metric(),
+					check.baseline() == -1 ? "-" : String.valueOf(check.baseline()),
+					check.measured(),
+					check.baseline() == -1 ? "-" : String.valueOf(check.limit()),
+					check.isExceeded() ? "  EXCEEDED" : ""
+				)
+			)
+		);
+		final long exceeded = checks.stream().filter(Check::isExceeded).count();
+		if (exceeded > 0) {
+			System.out.println(exceeded + " metric(s) exceeded the performance budget");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the best value of each metric over the runs, in a stable order: the total wall
+	 * time and peak heap, followed by the busy time and allocated bytes of each stage.
+	 */
+	private static Map<String, Long> measure(String snapshot, int runs) throws IOException {
+		final Path outputDir = Files.createTempDirectory("perf-gate");
+		final Map<String, Long> best = new LinkedHashMap<>();
+		try {
+			for (int run = 0; run < runs; run++) {
+				System.gc();
+				final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+				ManagementFactory.getMemoryPoolMXBeans().stream()
+					.filter(pool -> pool.getType() == MemoryType.HEAP)
+					.forEach(
+						pool -> {
+							pool.resetPeakUsage();
+							heapPools.add(pool);
+						}
+					);
+
+				final GenerationPipeline pipeline = new GenerationPipeline(
+					List.of(snapshot),
+					LuaModel.ConflictPolicy.ERROR,
+					outputDir.resolve("ardour.lua"),
+					outputDir.resolve("ardour.symbols.json"),
+					ExportOptions.DEFAULT.withParallel(false),
+					TypeGraph.Validation.WARN,
+					new TreeShaker.Roots(List.of(), List.of())
+				);
+				pipeline.run();
+
+				// Pools peak at different times, so the sum is an upper bound of the peak heap.
+				final Map<String, Long> metrics = new LinkedHashMap<>();
+				metrics.put("wallMs", pipeline.getStats().wallNanos() / 1_000_000);
+				metrics.put(
+					"peakHeapMB",
+					heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() >> 20
+				);
+				pipeline.getStats().stages().forEach(
+					stage -> {
+						metrics.put(stage.name() + ".busyMs", stage.busyNanos() / 1_000_000);
+						if (stage.allocatedBytes() != -1) {
+							metrics.put(stage.name() + ".allocatedMB", stage.allocatedBytes() >> 20);
+						}
+					}
+				);
+				metrics.forEach((metric, value) -> best.merge(metric, value, Math::min));
+			}
+		} finally {
+			try (Stream<Path> paths = Files.list(outputDir)) {
+				for (Path path : (Iterable<Path>) paths::iterator) {
+					Files.delete(path);
+				}
+			}
+			Files.delete(outputDir);
+		}
+		return best;
+	}
+
+	private static List<Check> check(
+		Map<String, Long> baseline, Map<String, Long> metrics, double tolerance
+	) {
+		final List<Check> checks = new ArrayList<>();
+		metrics.forEach(
+			(metric, measured) -> {
+				final Long base = baseline.get(metric);
+				if (base == null) {
+					checks.add(new Check(metric, -1, measured, -1));
+					return;
+				}
+				final long slack = metric.endsWith("MB") ? MEMORY_SLACK_MB : TIME_SLACK_MS;
+				checks.add(
+					new Check(
+						metric,
+						base,
+						measured,
+						Math.max(Math.round(base * (1 + tolerance)), base + slack)
+					)
+				);
+			}
+		);
+		return checks;
+	}
+
+	private static Map<String, Long> readBaseline(Path path) throws IOException {
+		final Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		final Map<String, Long> baseline = new LinkedHashMap<>();
+		properties.stringPropertyNames().forEach(
+			metric -> baseline.put(metric, Long.parseLong(properties.getProperty(metric).trim()))
+		);
+		return baseline;
+	}
+
+	/**
+	 * Writes the metrics in a stable order, so that a re-recorded baseline diffs cleanly.
+	 */
+	private static void writeBaseline(
+		Path path, String snapshot, Map<String, Long> metrics
+	) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write(
+				"# Performance baseline of the synthetic snapshot " +
+					Paths.get(snapshot).getFileName() + ", generated by generate_snapshot.py\n"
+			);
+			writer.write(
+				"# Recorded with " + System.getProperty("java.vm.name") + " " +
+					System.getProperty("java.version") + ", " +
+					Runtime.getRuntime().availableProcessors() + " CPU(s), 1 worker per stage\n"
+			);
+			for (Map.Entry<String, Long> entry : metrics.entrySet()) {
+				writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+			}
+		}
+	}
+}
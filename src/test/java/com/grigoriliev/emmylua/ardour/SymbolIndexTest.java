@@ -0,0 +1,67 @@
+package com.grigoriliev.emmylua.ardour;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SymbolIndexTest {
+	@Test
+	void locationsPointAtDeclarationsAfterNonAsciiText() throws IOException {
+		final SymbolIndex symbolIndex = new SymbolIndex();
+		final String lua = ArdourLuaScraper.exportEmmyLuaAnnotations(
+			ArdourLuaScraperTest.parseFixture(), symbolIndex
+		);
+		symbolIndex.resolve(lua, new SymbolIndex.Locator());
+
+		final byte[] bytes = lua.getBytes(StandardCharsets.UTF_8);
+		final List<String> lines = Arrays.asList(lua.split("\n", -1));
+		final int docLine = lines.indexOf("---A region of a playlist ü.") + 1;
+		assertTrue(docLine > 0, lua);
+		assertLocation(
+			symbolIndex, "ARDOUR.Region", SymbolIndex.Kind.CLASS,
+			"---@class ARDOUR.Region : ARDOUR.SessionObject", docLine, bytes, lines
+		);
+		assertLocation(
+			symbolIndex, "ARDOUR.Region.gain", SymbolIndex.Kind.FIELD,
+			"---@field gain number @(C type: float) The gain.", docLine, bytes, lines
+		);
+		assertLocation(
+			symbolIndex, "ARDOUR.Region:position", SymbolIndex.Kind.FUNCTION,
+			"function ARDOUR.Region:position() end", docLine, bytes, lines
+		);
+	}
+
+	/**
+	 * Checks that the symbol is located at the start of the declaration line, which follows
+	 * the line with the non-ASCII doc.
+	 */
+	private static void assertLocation(
+		SymbolIndex symbolIndex,
+		String name,
+		SymbolIndex.Kind kind,
+		String declaration,
+		int docLine,
+		byte[] bytes,
+		List<String> lines
+	) {
+		final SymbolIndex.Symbol symbol = symbolIndex.getSymbols().stream()
+			.filter(s -> s.name().equals(name) && s.kind() == kind).findFirst().orElseThrow();
+		final int line = symbol.location().line();
+		assertTrue(line > docLine, name);
+		assertEquals(declaration, lines.get(line - 1), name);
+
+		final int offset = (int) symbol.location().byteOffset();
+		final byte[] expected = (declaration + "\n").getBytes(StandardCharsets.UTF_8);
+		assertEquals(
+			declaration + "\n",
+			new String(bytes, offset, expected.length, StandardCharsets.UTF_8),
+			name
+		);
+	}
+}
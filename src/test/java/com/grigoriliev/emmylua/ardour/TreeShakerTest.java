@@ -0,0 +1,28 @@
+package com.grigoriliev.emmylua.ardour;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class TreeShakerTest {
+	@Test
+	void namespaceRootKeepsAllItsTypes() throws IOException {
+		final LuaModel model = TreeShaker.shake(
+			TypeGraphTest.loadFixtureModel(), new TreeShaker.Roots(List.of("ARDOUR"), List.of())
+		);
+
+		assertEquals(
+			List.of("ARDOUR.LuaAPI", "ARDOUR.Region", "ARDOUR.SessionObject"),
+			model.getLuaClasses().stream().map(LuaClass::getName).sorted()
+				.collect(Collectors.toList())
+		);
+		assertEquals(
+			List.of("ARDOUR.PlaylistDisposition", "ARDOUR.Region.Kind"),
+			model.getLuaEnums().stream().map(LuaEnum::type).sorted().collect(Collectors.toList())
+		);
+	}
+}
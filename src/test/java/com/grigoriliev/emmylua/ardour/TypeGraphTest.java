@@ -0,0 +1,38 @@
+package com.grigoriliev.emmylua.ardour;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class TypeGraphTest {
+	static LuaModel loadFixtureModel() throws IOException {
+		return loadFixtureModel("/luaref.html");
+	}
+
+	static LuaModel loadFixtureModel(String resource) throws IOException {
+		return ArdourLuaScraper.toLuaModel(ArdourLuaScraperTest.parseFixture(resource));
+	}
+
+	@Test
+	void emittedNamespacesAreNotReported() throws IOException {
+		assertEquals(List.of(), new TypeGraph(loadFixtureModel()).validate());
+	}
+
+	@Test
+	void reportsUnresolvedTypesCyclesAndOrphanNamespaces() throws IOException {
+		assertEquals(
+			List.of(
+				"ERROR: Unresolved type Vamp.Plugin in @return of ARDOUR.Route:plugin",
+				"ERROR: Unresolved type ARDOUR.Processor in @param 1 of ARDOUR.Route:set_processor",
+				"ERROR: Inheritance cycle: ARDOUR.Route : ARDOUR.Stripable : ARDOUR.Route",
+				"WARNING: Namespace Vamp is not declared"
+			),
+			new TypeGraph(loadFixtureModel("/luaref-problems.html")).validate().stream()
+				.map(TypeGraph.Problem::toString).collect(Collectors.toList())
+		);
+	}
+}